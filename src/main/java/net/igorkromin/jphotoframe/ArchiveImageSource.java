@@ -0,0 +1,161 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import net.igorkromin.jphotoframe.archive.ZipArchive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Photos read straight out of a ZIP archive. The archive's central directory is read once on startup and its image
+ * entries make up the image list, nothing is extracted to disk. Entries are picked by file extension since the
+ * contents of deflated entries can't be checked without inflating them.
+ *
+ * Archives are not watched for changes, a replaced archive is picked up on the next start.
+ */
+public class ArchiveImageSource implements ImageSource {
+
+    private static final String MAC_RESOURCE_DIRECTORY = "__MACOSX/";
+    private static final Set<String> IMAGE_EXTENSIONS =
+            new HashSet<>(Arrays.asList("jpg", "jpeg", "png", "gif", "bmp"));
+
+    private ZipArchive archive;
+    private Playlist playlist = new Playlist();
+
+    /**
+     * @param archiveFile ZIP archive to read photos from
+     * @throws IOException if the archive can't be read
+     */
+    public ArchiveImageSource(File archiveFile)
+            throws IOException
+    {
+        long startTime = System.currentTimeMillis();
+        archive = ZipArchive.open(archiveFile);
+
+        List<File> files = new ArrayList<>();
+        for (ZipArchive.Entry entry : archive.getEntries()) {
+            if (isImageEntry(entry)) {
+                files.add(archive.getEntryFile(entry));
+            }
+        }
+
+        playlist.update(files, Collections.<File>emptyList());
+
+        Log.info("Found " + files.size() + " images in archive " + archiveFile.getPath() + " with " +
+                archive.getEntries().size() + " entries in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Checks if a path refers to a ZIP archive rather than a directory.
+     * @param path
+     * @return
+     */
+    public static boolean isArchive(String path) {
+        return path.toLowerCase(Locale.ROOT).endsWith(".zip") && new File(path).isFile();
+    }
+
+    @Override
+    public void startWatching() {}
+
+    /**
+     * Closes the archive.
+     */
+    @Override
+    public void stopWatching() {
+        archive.close();
+    }
+
+    /**
+     * Does nothing, entries are only removed from an archive source when they fail to decode.
+     * @param imageFileListener
+     */
+    @Override
+    public void setImageFileListener(ImageFileListener imageFileListener) {}
+
+    @Override
+    public File getRoot() {
+        return archive.getFile();
+    }
+
+    @Override
+    public void reconcileCatalog() {}
+
+    @Override
+    public List<File> getImageFiles() {
+        return playlist.getFiles();
+    }
+
+    @Override
+    public File nextFile() {
+        return playlist.next();
+    }
+
+    @Override
+    public int getImageCount() {
+        return playlist.size();
+    }
+
+    @Override
+    public boolean containsFile(File imageFile) {
+        return playlist.contains(imageFile);
+    }
+
+    /**
+     * Takes an entry that failed to decode out of the image list until the next start.
+     * @param imageFile
+     */
+    @Override
+    public void quarantineFile(File imageFile) {
+        if (playlist.remove(imageFile)) {
+            Log.warning("Could not decode " + imageFile.getPath() + ", it will be skipped");
+        }
+    }
+
+    private static boolean isImageEntry(ZipArchive.Entry entry) {
+        String name = entry.getName();
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        int dot = fileName.lastIndexOf('.');
+
+        if (entry.isDirectory() || dot < 0 || fileName.startsWith(".") || name.startsWith(MAC_RESOURCE_DIRECTORY) ||
+                !IMAGE_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT)))
+        {
+            return false;
+        }
+
+        if (entry.isEncrypted() ||
+                (entry.getMethod() != ZipArchive.METHOD_STORED && entry.getMethod() != ZipArchive.METHOD_DEFLATED))
+        {
+            Log.warning("Skipping encrypted or unsupported archive entry " + name);
+            return false;
+        }
+
+        return true;
+    }
+
+}
@@ -27,9 +27,11 @@ public class ArgsParser {
 
     private static final String ARG_VAL_FIX_ROTATION = "-fixrotation";
     private static final String ARG_VAL_VERBOSE = "-verbose";
+    private static final String ARG_VAL_PRE_CACHE = "-precache";
 
     private boolean fixRotation = false;
     private boolean verboseLog = false;
+    private boolean preCache = false;
     private String configPath = null;
 
     public ArgsParser(String[] args) {
@@ -38,6 +40,9 @@ public class ArgsParser {
             if (ARG_VAL_FIX_ROTATION.equals(arg)) {
                 fixRotation = true;
             }
+            else if (ARG_VAL_PRE_CACHE.equals(arg)) {
+                preCache = true;
+            }
             else if (ARG_VAL_VERBOSE.equals(arg)) {
                 verboseLog = true;
             }
@@ -49,12 +54,20 @@ public class ArgsParser {
         if (fixRotation && configPath == null) {
             throw new RuntimeException("Please specify a photos directory for the rotation fix utility");
         }
+
+        if (preCache && configPath == null) {
+            throw new RuntimeException("Please specify a configuration file for the pre-cache utility");
+        }
     }
 
     public boolean fixRotation() {
         return fixRotation;
     }
 
+    public boolean preCache() {
+        return preCache;
+    }
+
     public boolean verboseLog() {
         return verboseLog;
     }
@@ -0,0 +1,47 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import java.io.File;
+
+/**
+ * Strategy for picking up changes to the directories of an ImageDirectory. Changes that are found are applied to the
+ * ImageDirectory by the detector itself.
+ */
+public interface ChangeDetector {
+
+    String MODE_AUTO = "auto";
+    String MODE_WATCH = "watch";
+    String MODE_POLL = "poll";
+
+    void watchDirectory(File dir);
+    void unwatchDirectory(File dir);
+
+    /**
+     * Waits for changes and applies them. Returns after at most ImageDirectory.STABLE_CHECK_INTERVAL while there are
+     * pending files, so that they can be checked.
+     * @throws InterruptedException
+     */
+    void detectChanges() throws InterruptedException;
+
+    void close();
+
+}
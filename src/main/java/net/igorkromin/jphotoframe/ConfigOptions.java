@@ -20,11 +20,14 @@
 
 package net.igorkromin.jphotoframe;
 
+import net.igorkromin.jphotoframe.cache.CacheFile;
 import net.igorkromin.jphotoframe.img.Factory;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 
@@ -52,6 +55,26 @@ public class ConfigOptions {
     public static final String DEFAULT_IMG_SCALER = Factory.SCALER_CONTAIN_ASPECT;
     public static final String DEFAULT_BG_FILLER = Factory.FILLER_STRETCH_SCALE;
     public static final String DEFAULT_DISABLE_CACHING = "false";
+    public static final String DEFAULT_LOOK_AHEAD_COUNT = "1";
+    public static final String DEFAULT_SUBSAMPLE_IMAGES = "true";
+    public static final String DEFAULT_DECODE_MEMORY_FRACTION = "0.5";
+    public static final String DEFAULT_CACHE_MAX_SIZE = "0";
+    public static final String DEFAULT_CACHE_MAX_ENTRIES = "0";
+    public static final String DEFAULT_CACHE_FORMAT = CacheFile.FORMAT_JPEG;
+    public static final String DEFAULT_FILE_STABLE_TIME = "2000";
+    public static final String DEFAULT_RECURSIVE_IMG_DIRECTORY = "false";
+    public static final String DEFAULT_CHANGE_DETECTION = ChangeDetector.MODE_AUTO;
+    public static final String DEFAULT_POLL_INTERVAL = "5000";
+    public static final String DEFAULT_POLL_MAX_INTERVAL = "60000";
+    public static final String DEFAULT_IMG_DIRECTORY_WEIGHTS = "1";
+    public static final String DEFAULT_ACCELERATE_PHOTOS = "true";
+    public static final String DEFAULT_PAINT_STATS_INTERVAL = "0";
+    public static final String RENDER_MODE_SWING = "swing";
+    public static final String RENDER_MODE_ACTIVE = "active";
+    public static final String DEFAULT_RENDER_MODE = RENDER_MODE_SWING;
+    public static final String DEFAULT_FRAME_RATE = "0";
+
+    private static final String LIST_SEPARATOR = ";";
 
     private static final String PROP_DEVICE_NUM = "screenNumber";
     private static final String PROP_IMG_TIME = "imageTimeout";
@@ -72,15 +95,42 @@ public class ConfigOptions {
     private static final String PROP_IMG_SCALER = "imageScaler";
     private static final String PROP_BG_FILLER = "backgroundFiller";
     private static final String PROP_DISABLE_CACHING = "disableCaching";
+    private static final String PROP_LOOK_AHEAD_COUNT = "lookAheadCount";
+    private static final String PROP_SUBSAMPLE_IMAGES = "subsampleImages";
+    private static final String PROP_DECODE_MEMORY_FRACTION = "decodeMemoryFraction";
+    private static final String PROP_CACHE_MAX_SIZE = "cacheMaxSize";
+    private static final String PROP_CACHE_MAX_ENTRIES = "cacheMaxEntries";
+    private static final String PROP_CACHE_FORMAT = "cacheFormat";
+    private static final String PROP_FILE_STABLE_TIME = "fileStableTime";
+    private static final String PROP_RECURSIVE_IMG_DIRECTORY = "recursiveImageDirectory";
+    private static final String PROP_CHANGE_DETECTION = "changeDetection";
+    private static final String PROP_POLL_INTERVAL = "pollInterval";
+    private static final String PROP_POLL_MAX_INTERVAL = "pollMaxInterval";
+    private static final String PROP_IMG_DIRECTORY_WEIGHTS = "imageDirectoryWeights";
+    private static final String PROP_ACCELERATE_PHOTOS = "acceleratePhotos";
+    private static final String PROP_PAINT_STATS_INTERVAL = "paintStatsInterval";
+    private static final String PROP_RENDER_MODE = "renderMode";
+    private static final String PROP_FRAME_RATE = "frameRate";
 
     private boolean showWeather, fullScreenWindow, disableCaching;
+    private boolean subsampleImages, recursiveImageDirectory, acceleratePhotos;
     private int gfxDeviceNum, imageTimeout;
     private int weatherForecastDays, weatherUpdateTime;
-    private float bgPercent, bgOpacity;
+    private int lookAheadCount;
+    private int cacheMaxSize, cacheMaxEntries;
+    private int fileStableTime;
+    private int pollInterval, pollMaxInterval;
+    private int paintStatsInterval, frameRate;
+    private float bgPercent, bgOpacity, decodeMemoryFraction;
     private String weatherCity, imageDirectory, cacheDirectory, dateFormat;
     private String timeFormat, weatherApiKey, weatherUnits, layoutFile;
     private String imageScaler;
     private String backgroundFiller;
+    private String cacheFormat;
+    private String changeDetection;
+    private String renderMode;
+    private String[] imageDirectories;
+    private int[] imageDirectoryWeights;
 
 
     public ConfigOptions(String configFileName)
@@ -101,14 +151,26 @@ public class ConfigOptions {
             showWeather = Boolean.parseBoolean(getValue(props, PROP_SHOW_WEATHER, DEFAULT_SHOW_WEATHER));
             fullScreenWindow = Boolean.parseBoolean(getValue(props, PROP_FULL_SCREEN_WINDOW, DEFAULT_FULL_SCREEN_WINDOW));
             disableCaching = Boolean.parseBoolean(getValue(props, PROP_DISABLE_CACHING, DEFAULT_DISABLE_CACHING));
+            subsampleImages = Boolean.parseBoolean(getValue(props, PROP_SUBSAMPLE_IMAGES, DEFAULT_SUBSAMPLE_IMAGES));
+            recursiveImageDirectory = Boolean.parseBoolean(getValue(props, PROP_RECURSIVE_IMG_DIRECTORY, DEFAULT_RECURSIVE_IMG_DIRECTORY));
+            acceleratePhotos = Boolean.parseBoolean(getValue(props, PROP_ACCELERATE_PHOTOS, DEFAULT_ACCELERATE_PHOTOS));
 
             gfxDeviceNum = Integer.parseInt(getValue(props, PROP_DEVICE_NUM, DEFAULT_DEVICE_NUM));
             imageTimeout = Integer.parseInt(getValue(props, PROP_IMG_TIME, DEFAULT_IMG_TIME));
             weatherForecastDays = Integer.parseInt(getValue(props, PROP_WEATHER_FORECAST_DAYS, DEFAULT_WEATHER_FORECAST_DAYS));
             weatherUpdateTime = Integer.parseInt(getValue(props, PROP_WEATHER_UPDATE_TIME, DEFAULT_WEATHER_UPDATE_TIME));
+            lookAheadCount = Integer.parseInt(getValue(props, PROP_LOOK_AHEAD_COUNT, DEFAULT_LOOK_AHEAD_COUNT));
+            cacheMaxSize = Integer.parseInt(getValue(props, PROP_CACHE_MAX_SIZE, DEFAULT_CACHE_MAX_SIZE));
+            cacheMaxEntries = Integer.parseInt(getValue(props, PROP_CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_ENTRIES));
+            pollInterval = Integer.parseInt(getValue(props, PROP_POLL_INTERVAL, DEFAULT_POLL_INTERVAL));
+            pollMaxInterval = Integer.parseInt(getValue(props, PROP_POLL_MAX_INTERVAL, DEFAULT_POLL_MAX_INTERVAL));
+            fileStableTime = Integer.parseInt(getValue(props, PROP_FILE_STABLE_TIME, DEFAULT_FILE_STABLE_TIME));
+            paintStatsInterval = Integer.parseInt(getValue(props, PROP_PAINT_STATS_INTERVAL, DEFAULT_PAINT_STATS_INTERVAL));
+            frameRate = Integer.parseInt(getValue(props, PROP_FRAME_RATE, DEFAULT_FRAME_RATE));
 
             bgPercent = Float.parseFloat(getValue(props, PROP_BG_PERCENT, DEFAULT_BG_PERCENT));
             bgOpacity = Float.parseFloat(getValue(props, PROP_BG_OPACITY, DEFAULT_BG_OPACITY));
+            decodeMemoryFraction = Float.parseFloat(getValue(props, PROP_DECODE_MEMORY_FRACTION, DEFAULT_DECODE_MEMORY_FRACTION));
 
             weatherCity = getValue(props, PROP_WEATHER_CITY, DEFAULT_WEATHER_CITY);
             imageDirectory = getValue(props, PROP_IMG_DIRECTORY, DEFAULT_IMG_DIRECTORY);
@@ -120,6 +182,30 @@ public class ConfigOptions {
             layoutFile = getValue(props, PROP_LAYOUT_FILE, DEFAULT_LAYOUT_FILE);
             imageScaler = getValue(props, PROP_IMG_SCALER, DEFAULT_IMG_SCALER);
             backgroundFiller = getValue(props, PROP_BG_FILLER, DEFAULT_BG_FILLER);
+            cacheFormat = getValue(props, PROP_CACHE_FORMAT, DEFAULT_CACHE_FORMAT);
+            changeDetection = getValue(props, PROP_CHANGE_DETECTION, DEFAULT_CHANGE_DETECTION);
+            renderMode = getValue(props, PROP_RENDER_MODE, DEFAULT_RENDER_MODE);
+
+            // several image directories can be given, each with a weight, directories without a weight get 1. Empty
+            // weights keep their position so the rest still line up with their directories
+            imageDirectories = splitList(imageDirectory, false);
+            String[] weights = splitList(getValue(props, PROP_IMG_DIRECTORY_WEIGHTS, DEFAULT_IMG_DIRECTORY_WEIGHTS), true);
+            imageDirectoryWeights = new int[imageDirectories.length];
+
+            if (props.containsKey(PROP_IMG_DIRECTORY_WEIGHTS) && weights.length != imageDirectories.length) {
+                Log.warning("Found " + weights.length + " image directory weights for " + imageDirectories.length +
+                        " image directories, directories without a weight get 1 and extra weights are ignored");
+            }
+
+            for (int i = 0; i < imageDirectories.length; i++) {
+                imageDirectoryWeights[i] = (i < weights.length && !weights[i].isEmpty()) ?
+                        Integer.parseInt(weights[i]) : 1;
+
+                if (imageDirectoryWeights[i] <= 0) {
+                    Log.warning("Image directory weight must be positive, using 1 for " + imageDirectories[i]);
+                    imageDirectoryWeights[i] = 1;
+                }
+            }
 
             int dwut = Integer.parseInt(DEFAULT_WEATHER_UPDATE_TIME);
             if (weatherUpdateTime < dwut) {
@@ -133,6 +219,64 @@ public class ConfigOptions {
                 weatherForecastDays = dwfd;
             }
 
+            if (decodeMemoryFraction <= 0 || decodeMemoryFraction > 1) {
+                Log.warning("Decode memory fraction is out of range, using default");
+                decodeMemoryFraction = Float.parseFloat(DEFAULT_DECODE_MEMORY_FRACTION);
+            }
+
+            if (lookAheadCount < 0) {
+                Log.warning("Look ahead count is negative, disabling look ahead");
+                lookAheadCount = 0;
+            }
+
+            if (cacheMaxSize < 0 || cacheMaxEntries < 0) {
+                Log.warning("Cache limits are negative, cache size will not be limited");
+                cacheMaxSize = Math.max(cacheMaxSize, 0);
+                cacheMaxEntries = Math.max(cacheMaxEntries, 0);
+            }
+
+            if (fileStableTime < 0) {
+                Log.warning("File stable time is negative, new files will be shown straight away");
+                fileStableTime = 0;
+            }
+
+            if (!CacheFile.FORMAT_JPEG.equals(cacheFormat) && !CacheFile.FORMAT_RAW.equals(cacheFormat)) {
+                Log.warning("Unknown cache format " + cacheFormat + ", using " + DEFAULT_CACHE_FORMAT);
+                cacheFormat = DEFAULT_CACHE_FORMAT;
+            }
+
+            if (!ChangeDetector.MODE_AUTO.equals(changeDetection) && !ChangeDetector.MODE_WATCH.equals(changeDetection) &&
+                    !ChangeDetector.MODE_POLL.equals(changeDetection))
+            {
+                Log.warning("Unknown change detection mode " + changeDetection + ", using " + DEFAULT_CHANGE_DETECTION);
+                changeDetection = DEFAULT_CHANGE_DETECTION;
+            }
+
+            if (pollInterval < 1000) {
+                Log.warning("Poll interval is too short, using 1000");
+                pollInterval = 1000;
+            }
+
+            if (pollMaxInterval < pollInterval) {
+                Log.warning("Maximum poll interval is shorter than the poll interval, using " + pollInterval);
+                pollMaxInterval = pollInterval;
+            }
+
+            if (paintStatsInterval < 0) {
+                Log.warning("Paint stats interval is negative, paint stats will not be logged");
+                paintStatsInterval = 0;
+            }
+
+            if (!RENDER_MODE_SWING.equals(renderMode) && !RENDER_MODE_ACTIVE.equals(renderMode)) {
+                Log.warning("Unknown render mode " + renderMode + ", using " + DEFAULT_RENDER_MODE);
+                renderMode = DEFAULT_RENDER_MODE;
+            }
+
+            if (frameRate < 0) {
+                Log.warning("Frame rate is negative, frames will only be rendered when the view changes");
+                frameRate = 0;
+            }
+
             if (showWeather && weatherApiKey.equals(DEFAULT_WEATHER_API_KEY)) {
                 Log.warning("Weather API key is not set, weather will be disabled");
                 showWeather = false;
@@ -150,6 +294,24 @@ public class ConfigOptions {
         return weatherForecastDays;
     }
 
+    /**
+     * Splits a list of values separated by semicolons.
+     * @param value
+     * @param keepEmpty Whether empty values are kept in place, otherwise they are left out
+     * @return
+     */
+    private String[] splitList(String value, boolean keepEmpty) {
+        List<String> values = new ArrayList<>();
+
+        for (String v : value.split(LIST_SEPARATOR, -1)) {
+            if (keepEmpty || !v.trim().isEmpty()) {
+                values.add(v.trim());
+            }
+        }
+
+        return values.toArray(new String[values.size()]);
+    }
+
     private String getValue(Properties props, String key, String defaultValue) {
         if (props.containsKey(key)) {
             String value = (String) props.get(key);
@@ -240,4 +402,88 @@ public class ConfigOptions {
         return showWeather;
     }
 
+    public int getLookAheadCount() {
+        return lookAheadCount;
+    }
+
+    public boolean isSubsampleImages() {
+        return subsampleImages;
+    }
+
+    public float getDecodeMemoryFraction() {
+        return decodeMemoryFraction;
+    }
+
+    /**
+     * Returns the maximum size of the image cache in megabytes, 0 if the size is not limited.
+     * @return
+     */
+    public int getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    /**
+     * Returns the maximum number of images in the image cache, 0 if the number is not limited.
+     * @return
+     */
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public String getCacheFormat() {
+        return cacheFormat;
+    }
+
+    public int getFileStableTime() {
+        return fileStableTime;
+    }
+
+    public boolean isRecursiveImageDirectory() {
+        return recursiveImageDirectory;
+    }
+
+    public String getChangeDetection() {
+        return changeDetection;
+    }
+
+    public int getPollInterval() {
+        return pollInterval;
+    }
+
+    public int getPollMaxInterval() {
+        return pollMaxInterval;
+    }
+
+    /**
+     * Gets the image directories, imageDirectory can hold several directories separated by semicolons.
+     * @return
+     */
+    public String[] getImageDirectories() {
+        return imageDirectories;
+    }
+
+    /**
+     * Gets the weight of each image directory, in the same order as getImageDirectories().
+     * @return
+     */
+    public int[] getImageDirectoryWeights() {
+        return imageDirectoryWeights;
+    }
+
+    public boolean isAcceleratePhotos() {
+        return acceleratePhotos;
+    }
+
+    public int getPaintStatsInterval() {
+        return paintStatsInterval;
+    }
+
+    public String getRenderMode() {
+        return renderMode;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
 }
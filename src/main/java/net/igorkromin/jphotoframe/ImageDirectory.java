@@ -20,14 +20,28 @@
 
 package net.igorkromin.jphotoframe;
 
+import net.igorkromin.jphotoframe.cache.CacheKey;
+import net.igorkromin.jphotoframe.catalog.PhotoCatalog;
+import net.igorkromin.jphotoframe.catalog.PhotoInfo;
+import net.igorkromin.jphotoframe.img.ImageFormat;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Vector;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static java.nio.file.StandardWatchEventKinds.*;
 import static net.igorkromin.jphotoframe.ConfigOptions.DEFAULT_CACHE_DIRECTORY;
@@ -35,29 +49,82 @@ import static net.igorkromin.jphotoframe.ConfigOptions.DEFAULT_IMG_DIRECTORY;
 
 /**
  * Monitor for the image directory. Requires a listener to be provided to handle pause/resume events.
+ *
+ * In recursive mode all child directories are included as well. The directory tree is listed in parallel and each
+ * directory gets its own watch registration. The cache directory is always left out.
+ *
+ * Changes are picked up by a ChangeDetector, either from file system notifications or by polling directory
+ * modification times. In auto mode a probe file is written to the image directory on startup and polling is used if
+ * no notification for it arrives.
+ *
+ * The image list is saved in a photo catalog in the cache directory. On startup the image list is restored from the
+ * catalog and then reconciled with the directories in the background, so the first photo can be shown straight away
+ * even for very large photo collections.
+ * The catalog is passed in so that several image directories can share it, the owner of the catalog starts and stops
+ * its background scanning.
+ *
+ * Files only go into the image list if their first few bytes identify them as a supported image format, so the pause
+ * file, sidecar files and the like never reach the decoder. Each file is checked once, files in the image list or the
+ * catalog are not checked again. Files that are not images or that fail to decode are quarantined in the catalog until
+ * they are modified.
  */
-public class ImageDirectory {
+public class ImageDirectory implements ImageSource {
 
     private final static String PAUSE_FILE = "pause.txt";
+    private final static long PROBE_WINDOW = 2000;
+
+    final static long STABLE_CHECK_INTERVAL = 500;
 
     PauseListener pauseListener;
-    WatchService dirWatcher;
+    ImageFileListener imageFileListener;
+    ChangeDetector changeDetector;
+    MonitorThread monitor;
     Path imageDirPath;
     File imageDirFile;
     File cacheDirFile;
-    Vector<File> imageFiles = new Vector<>();
-    int imageIndex;
+    CacheKey cacheKey;
+    PhotoCatalog catalog;
+    Playlist playlist = new Playlist();
+    Map<File, PendingFile> pendingFiles = new HashMap<>();
+    Set<File> directories = new HashSet<>();
+    Path cacheDirPath;
+    File pauseFile;
+    long fileStableTime;
+    boolean recursive;
+    String changeDetection;
+    long pollInterval;
+    long pollMaxInterval;
+    boolean stopping = false;
+    boolean needsReconcile = false;
     boolean isWatching = false;
     boolean paused = false;
 
-    public ImageDirectory(String dir, String cacheDir, PauseListener pauseListener)
+    /**
+     * @param dir Image directory to watch
+     * @param config Provides the cache directory, whether to include child directories, the file stable time and how
+     *               changes are detected
+     * @param cacheKey
+     * @param catalog Photo catalog kept in the cache directory, may be shared with other image directories
+     * @param pauseListener
+     * @throws IOException
+     */
+    public ImageDirectory(String dir, ConfigOptions config, CacheKey cacheKey, PhotoCatalog catalog,
+                          PauseListener pauseListener)
             throws IOException
     {
         if (pauseListener == null) {
             throw new RuntimeException("Can't have a null pause listener");
         }
         this.pauseListener = pauseListener;
-
+        this.cacheKey = cacheKey;
+        this.catalog = catalog;
+        this.fileStableTime = config.getFileStableTime();
+        this.recursive = config.isRecursiveImageDirectory();
+        this.changeDetection = config.getChangeDetection();
+        this.pollInterval = config.getPollInterval();
+        this.pollMaxInterval = config.getPollMaxInterval();
+
+        String cacheDir = config.getCacheDirectory();
         if (dir == null || cacheDir == null || DEFAULT_IMG_DIRECTORY.equals(dir) || DEFAULT_CACHE_DIRECTORY.equals(cacheDir)) {
             Log.warning("No valid image/cache directories specified, will not watch directories");
             return;
@@ -67,32 +134,33 @@ public class ImageDirectory {
         if (!(cacheDirFile.isDirectory() && cacheDirFile.canRead())) {
             throw new RuntimeException("Cache directory not available: " + cacheDirFile.getAbsolutePath());
         }
+        cacheDirPath = cacheDirFile.toPath().toAbsolutePath().normalize();
 
-        // set up a watcher for the images directory
         imageDirPath = FileSystems.getDefault().getPath(dir);
         imageDirFile = imageDirPath.toFile();
-        if (imageDirFile.exists() && imageDirFile.isDirectory() && imageDirFile.canRead()) {
-            dirWatcher = FileSystems.getDefault().newWatchService();
-        }
-        else {
+        if (!(imageDirFile.exists() && imageDirFile.isDirectory() && imageDirFile.canRead())) {
             throw new RuntimeException("Image directory not available: " + imageDirFile.getAbsolutePath());
         }
 
+        pauseFile = new File(imageDirFile, PAUSE_FILE);
         isWatching = true;
 
-        // get the initial list of files in the directory
-        sync();
+        // start from the photo catalog if there is one, otherwise get the initial list of files in the directory
+        if (!restoreFromCatalog()) {
+            sync();
+        }
     }
 
-    public void startWatching()
+    public synchronized void startWatching()
             throws IOException
     {
-        if (!isWatching) {
+        if (!isWatching || monitor != null) {
             return;
         }
 
-        (new WatcherThread(dirWatcher)).start();
-        imageDirPath.register(dirWatcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        monitor = new MonitorThread();
+        monitor.setName("DirectoryMonitor " + imageDirFile.getPath());
+        monitor.start();
     }
 
     public void stopWatching() {
@@ -100,36 +168,110 @@ public class ImageDirectory {
             return;
         }
 
-        try {
-            dirWatcher.close();
+        ChangeDetector detector;
+        synchronized (this) {
+            stopping = true;
+            detector = changeDetector;
+            changeDetector = null;
         }
-        catch (IOException e) {
-            // ignore the exception on close
+
+        if (monitor != null) {
+            monitor.interrupt();
+        }
+
+        if (detector != null) {
+            detector.close();
         }
     }
 
     /**
-     * Gets the file object for the next image to be shown.
-     * @return
+     * Sets the listener to notify when image files are removed from the directory.
+     * @param imageFileListener
      */
-    public File nextFile() {
-        if (imageFiles.size() > 0) {
-            File f = imageFiles.get(imageIndex);
+    public void setImageFileListener(ImageFileListener imageFileListener) {
+        this.imageFileListener = imageFileListener;
+    }
 
-            // advance and cycle the index if necessary
-            imageIndex++;
-            if (imageIndex == imageFiles.size()) {
-                imageIndex = 0;
+    @Override
+    public File getRoot() {
+        return imageDirFile;
+    }
 
-                // shuffle on cycle (maybe this should be configurable?)
-                Collections.shuffle(imageFiles);
-            }
+    /**
+     * Returns the cache directory.
+     * @return null if no valid cache directory was specified
+     */
+    public File getCacheDirectory() {
+        return cacheDirFile;
+    }
 
-            return f;
+    /**
+     * Brings an image list restored from the photo catalog up to date with the directory. This is done automatically
+     * once watching starts, it only needs to be called if the directory is not going to be watched.
+     */
+    public void reconcileCatalog() {
+        if (needsReconcile) {
+            needsReconcile = false;
+            reconcile();
         }
-        else {
-            return null;
+    }
+
+    /**
+     * Returns the photo catalog record for an image file, without reading the file.
+     * @param imageFile
+     * @return null if the image file is not in the catalog
+     */
+    public PhotoInfo getPhotoInfo(File imageFile) {
+        return (catalog != null) ? catalog.get(imageFile) : null;
+    }
+
+    /**
+     * Checks if an image file is in the image list.
+     * @param imageFile
+     * @return
+     */
+    public boolean containsFile(File imageFile) {
+        return playlist.contains(imageFile);
+    }
+
+    /**
+     * Returns the number of files in the image list.
+     * @return
+     */
+    public int getImageCount() {
+        return playlist.size();
+    }
+
+    /**
+     * Takes a file that failed to decode out of the image list and quarantines it, so that it is not tried again until
+     * it is modified.
+     * @param imageFile
+     */
+    public synchronized void quarantineFile(File imageFile) {
+        if (!isWatching) {
+            return;
         }
+
+        Log.warning("Could not decode " + imageFile.getPath() + ", it will be skipped until it is modified");
+
+        removeFile(imageFile);
+        catalog.quarantine(imageFile, PhotoCatalog.QUARANTINE_DECODE_FAILED);
+    }
+
+    /**
+     * Returns a copy of the current list of image files.
+     * @return
+     */
+    public synchronized List<File> getImageFiles() {
+        return playlist.getFiles();
+    }
+
+    /**
+     * Gets the file object for the next image to be shown.
+     * @return
+     */
+    public File nextFile() {
+        return playlist.next();
     }
 
     /**
@@ -149,82 +291,601 @@ public class ImageDirectory {
     }
 
     /**
-     * Returns the cached image file for a (non-cached) image file. No checks are done on whether the passed in
-     * file exists.
+     * Returns the cached image file for a (non-cached) image file. The cache file name is based on the image file
+     * path, size and modification time so a modified image maps to a new cache file. No checks are done on whether
+     * the returned file exists.
      * @param imageFile
-     * @return
+     * @return null if the image file can't be read
      */
     public File getCachedImageFile(File imageFile) {
         if (imageFile == null || cacheDirFile == null) {
             return null;
         }
 
-        Path newPath = FileSystems.getDefault().getPath(cacheDirFile.getAbsolutePath(), "X" + imageFile.hashCode());
+        String key = cacheKey.getKey(imageFile);
+        if (key == null) {
+            return null;
+        }
+
+        Path newPath = FileSystems.getDefault().getPath(cacheDirFile.getAbsolutePath(), cacheKey.getFileName(key));
         File newFile = newPath.toFile();
 
         return newFile;
     }
 
-    private void sync() {
+    /**
+     * Brings the image list in line with the directory contents. Only the differences are applied to the image list
+     * so the current position in the shuffled list is kept. This is done on startup and when watch events were lost.
+     */
+    synchronized void sync() {
         if (!isWatching) {
             return;
         }
 
         Log.info("Synchronising directory contents");
 
-        imageFiles.clear();
-        imageIndex = 0;
+        Set<File> currentFiles = new HashSet<>();
+        Set<File> currentDirs = new HashSet<>();
+        listDirectory(imageDirFile, currentFiles, currentDirs);
 
-        boolean foundPauseFile = false;
-        File[] files = imageDirFile.listFiles();
+        boolean foundPauseFile = pauseFile.exists();
 
-        for (File f : files) {
-            if (f.isFile() && f.canRead() && !f.isHidden()) {
-                imageFiles.add(f);
-
-                // check if we should pause processing and fire the pause event
-                if (f.getName().equals(PAUSE_FILE)) {
-                    Log.verbose("Found pause file on sync");
-                    if (!paused) {
-                        paused = true;
-                        pauseListener.pauseEvent();
+        // watch any directories that are new since the last sync
+        for (File dir : currentDirs) {
+            if (!directories.contains(dir)) {
+                registerDirectory(dir);
+            }
+        }
+        for (File dir : directories) {
+            if (!currentDirs.contains(dir)) {
+                catalog.removeDirectory(dir);
+            }
+        }
+        directories = currentDirs;
+
+        // work out the differences and apply them to the playlist in one go
+        List<File> removedFiles = playlist.getFilesNotIn(currentFiles);
+
+        List<File> addedFiles = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (File f : currentFiles) {
+            if (playlist.contains(f)) {
+                continue;
+            }
+
+            // files modified very recently may still be being written
+            if (now - f.lastModified() < fileStableTime) {
+                pendFile(f);
+            }
+            else {
+                addedFiles.add(f);
+            }
+        }
+
+        playlist.update(addedFiles, removedFiles);
+
+        for (File f : addedFiles) {
+            catalog.add(f);
+        }
+        for (File f : removedFiles) {
+            catalog.remove(f);
+        }
+
+        // let the listener know about any files that were removed since the last sync
+        if (imageFileListener != null) {
+            for (File f : removedFiles) {
+                imageFileListener.imageFileRemoved(f);
+            }
+        }
+
+        Log.info("Found " + playlist.size() + " files");
+
+        // fire the pause event if the pause file was found or the resume event if it was removed
+        if (foundPauseFile) {
+            Log.verbose("Found pause file on sync");
+            setPaused(true);
+        }
+        else {
+            setPaused(false);
+        }
+    }
+
+    /**
+     * Fills the image list from the photo catalog. The catalog may be out of date, reconcile() is run once watching
+     * starts.
+     * @return false if the image directory is not in the catalog
+     */
+    private synchronized boolean restoreFromCatalog() {
+        Map<File, Long> catalogDirs = catalog.getDirectories(imageDirFile, recursive);
+        if (!catalogDirs.containsKey(imageDirFile)) {
+            return false;
+        }
+
+        playlist.update(catalog.getFiles(imageDirFile, recursive), Collections.<File>emptyList());
+        directories.addAll(catalogDirs.keySet());
+        needsReconcile = true;
+
+        Log.info("Restored " + playlist.size() + " files from the photo catalog");
+        setPaused(pauseFile.exists());
+
+        return true;
+    }
+
+    /**
+     * Brings an image list restored from the catalog in line with the directory contents. Only directories whose
+     * modification time differs from the one in the catalog are listed again, adding or removing a file changes the
+     * modification time of its directory. Changes to existing files while the photo frame was not running are only
+     * picked up when the photo is next loaded.
+     */
+    private void reconcile() {
+        long startTime = System.currentTimeMillis();
+        int changedDirs = pollDirectories();
+
+        // quarantined files are checked again if they were modified while the photo frame was not running
+        long now = System.currentTimeMillis();
+        for (File f : catalog.getQuarantinedFiles(imageDirFile, recursive)) {
+            synchronized (this) {
+                if (isImageFile(f) && isCandidateFile(f, now)) {
+                    admitFile(f, now);
+                }
+            }
+        }
+
+        Log.info("Reconciled directories with the photo catalog in " + (System.currentTimeMillis() - startTime) +
+                "ms; changed directories = " + changedDirs);
+    }
+
+    /**
+     * Compares the modification times of the directories with the ones in the photo catalog, lists the directories
+     * that have changed again and drops the ones that are gone. Nothing is done while the image directory itself is
+     * not available, so that an unmounted network share does not empty the image list.
+     * @return Number of directories that changed
+     */
+    int pollDirectories() {
+        if (!imageDirFile.isDirectory()) {
+            Log.warning("Image directory not available: " + imageDirFile.getAbsolutePath());
+            return 0;
+        }
+
+        Map<File, Long> catalogDirs = catalog.getDirectories(imageDirFile, recursive);
+        int changedDirs = 0;
+
+        for (Map.Entry<File, Long> entry : catalogDirs.entrySet()) {
+            File dir = entry.getKey();
+            long modified = dir.lastModified();
+
+            if (modified == 0 || !dir.isDirectory()) {
+                synchronized (this) {
+                    if (directories.contains(dir)) {
+                        removeDirectory(dir);
+                        changedDirs++;
                     }
-                    foundPauseFile = true;
                 }
             }
+            else if (modified != entry.getValue()) {
+                reconcileDirectory(dir, modified);
+                changedDirs++;
+            }
+        }
+
+        return changedDirs;
+    }
+
+    /**
+     * Lists a single directory that has changed since it was catalogued and applies the differences.
+     * @param dir
+     * @param modified
+     */
+    private void reconcileDirectory(File dir, long modified) {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        Set<File> files = new HashSet<>();
+        List<File> dirs = new ArrayList<>();
+        long listTime = System.currentTimeMillis();
+        for (File f : entries) {
+            if (isImageFile(f)) {
+                if (isCandidateFile(f, listTime)) {
+                    files.add(f);
+                }
+            }
+            else if (recursive && isImageDirectory(f)) {
+                dirs.add(f);
+            }
+        }
+
+        synchronized (this) {
+            // recorded first, pending files reset it so the directory is listed again until they are admitted
+            catalog.setDirectory(dir, modified);
+
+            List<File> removedFiles = new ArrayList<>();
+            for (File f : playlist.getFiles(dir, false)) {
+                if (!files.contains(f)) {
+                    removedFiles.add(f);
+                }
+            }
+
+            for (File f : removedFiles) {
+                removeFile(f);
+            }
+
+            long now = System.currentTimeMillis();
+            for (File f : files) {
+                admitFile(f, now);
+            }
+
+            for (File d : dirs) {
+                if (!directories.contains(d)) {
+                    addDirectory(d);
+                }
+            }
+
+            if (dir.equals(imageDirFile)) {
+                setPaused(pauseFile.exists());
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of watch events to the image list. Only the last event seen for each file is in the batch.
+     * @param events
+     */
+    synchronized void handleEvents(Map<Path, WatchEvent.Kind<?>> events) {
+        Log.verbose("Applying " + events.size() + " directory events");
+
+        for (Map.Entry<Path, WatchEvent.Kind<?>> event : events.entrySet()) {
+            handleEvent(event.getValue(), event.getKey());
+        }
+    }
+
+    /**
+     * Applies a single watch event to the image list. New and modified files are held back until they are stable.
+     * In recursive mode, new directories are listed and watched and removed directories take their files with them.
+     * @param kind
+     * @param path Path of the file the event is for
+     */
+    private void handleEvent(WatchEvent.Kind<?> kind, Path path) {
+        File f = path.toFile();
+        Log.verbose("Directory event " + kind.name() + ": " + f.getPath());
+
+        if (f.equals(pauseFile)) {
+            setPaused(kind != ENTRY_DELETE);
+            return;
+        }
+        else if (directories.contains(f)) {
+            if (kind == ENTRY_DELETE) {
+                removeDirectory(f);
+            }
+            return;
+        }
+        else if (recursive && kind == ENTRY_CREATE && isImageDirectory(f)) {
+            addDirectory(f);
+            return;
         }
 
-        Collections.shuffle(imageFiles);
-        Log.info("Found " + imageFiles.size() + " files");
+        // a file being written must not be shown, even if an older version of it was in the image list
+        removeFile(f);
 
-        // fire the resume event if the pause file is removed
-        if (paused && foundPauseFile == false) {
+        if (kind == ENTRY_DELETE || !isImageFile(f)) {
+            pendingFiles.remove(f);
+        }
+        else {
+            pendFile(f);
+        }
+    }
+
+    /**
+     * Lists and watches a directory that was added to the directory tree. Its files are treated as new files.
+     * @param dir
+     */
+    private void addDirectory(File dir) {
+        Log.verbose("Directory added: " + dir.getPath());
+
+        Set<File> files = new HashSet<>();
+        Set<File> dirs = new HashSet<>();
+        listDirectory(dir, files, dirs);
+
+        for (File d : dirs) {
+            if (directories.add(d)) {
+                registerDirectory(d);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (File f : files) {
+            admitFile(f, now);
+        }
+    }
+
+    /**
+     * Removes a directory that was deleted from the directory tree, along with all of the files and directories
+     * that were in it.
+     * @param dir
+     */
+    private void removeDirectory(File dir) {
+        Log.verbose("Directory removed: " + dir.getPath());
+        catalog.removeDirectory(dir);
+
+        String prefix = dir.getPath() + File.separator;
+
+        Iterator<File> dirIt = directories.iterator();
+        while (dirIt.hasNext()) {
+            File d = dirIt.next();
+            if (d.equals(dir) || d.getPath().startsWith(prefix)) {
+                dirIt.remove();
+
+                if (changeDetector != null) {
+                    changeDetector.unwatchDirectory(d);
+                }
+            }
+        }
+
+        Iterator<File> pendingIt = pendingFiles.keySet().iterator();
+        while (pendingIt.hasNext()) {
+            if (pendingIt.next().getPath().startsWith(prefix)) {
+                pendingIt.remove();
+            }
+        }
+
+        for (File f : playlist.getFiles(dir, true)) {
+            removeFile(f);
+        }
+    }
+
+    /**
+     * Lists the image files in a directory. In recursive mode, child directories are listed too, in parallel.
+     * @param dir
+     * @param files Receives the image files found
+     * @param dirs Receives the directories listed, including dir
+     */
+    private void listDirectory(File dir, Set<File> files, Set<File> dirs) {
+        Queue<File> foundFiles = new ConcurrentLinkedQueue<>();
+        Queue<File> foundDirs = new ConcurrentLinkedQueue<>();
+        ListDirectoryAction action = new ListDirectoryAction(dir, foundFiles, foundDirs);
+
+        if (recursive) {
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                pool.invoke(action);
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        else {
+            action.compute();
+        }
+
+        files.addAll(foundFiles);
+        dirs.addAll(foundDirs);
+    }
+
+    /**
+     * Registers a directory with the change detector, if watching has started.
+     * @param dir
+     */
+    private void registerDirectory(File dir) {
+        if (changeDetector == null || !dir.isDirectory()) {
+            return;
+        }
+
+        changeDetector.watchDirectory(dir);
+    }
+
+    /**
+     * Holds a new or changed file back from the image list until its size and modification time have stopped
+     * changing for the stable time.
+     * @param f
+     */
+    private void pendFile(File f) {
+        if (fileStableTime <= 0) {
+            if (hasImageFormat(f)) {
+                addFile(f);
+            }
+            return;
+        }
+
+        PendingFile pending = pendingFiles.get(f);
+        if (pending == null) {
+            pendingFiles.put(f, new PendingFile(f.length(), f.lastModified()));
+
+            // make sure the directory is listed again on the next startup in case the file is never admitted
+            catalog.setDirectory(f.getParentFile(), 0);
+        }
+        else {
+            pending.update(f.length(), f.lastModified());
+        }
+    }
+
+    /**
+     * Adds pending files to the image list once they are stable and forgets pending files that have gone away.
+     */
+    synchronized void checkPendingFiles() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<File, PendingFile>> it = pendingFiles.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<File, PendingFile> entry = it.next();
+            File f = entry.getKey();
+            PendingFile pending = entry.getValue();
+
+            if (!isImageFile(f)) {
+                it.remove();
+            }
+            else if (pending.update(f.length(), f.lastModified())) {
+                Log.verbose("File still changing: " + f.getName());
+            }
+            else if (now - pending.stableSince >= fileStableTime) {
+                it.remove();
+
+                if (hasImageFormat(f)) {
+                    addFile(f);
+                }
+            }
+        }
+    }
+
+    synchronized boolean hasPendingFiles() {
+        return !pendingFiles.isEmpty();
+    }
+
+    /**
+     * Adds a file to the image list, or holds it back if it was modified very recently and may still be being
+     * written.
+     * @param f
+     * @param now
+     */
+    private void admitFile(File f, long now) {
+        if (!playlist.contains(f) && now - f.lastModified() < fileStableTime) {
+            pendFile(f);
+        }
+        else {
+            addFile(f);
+        }
+    }
+
+    /**
+     * Adds a file to the image list and the photo catalog, unless it is already in the image list. A new file is shown
+     * before the next reshuffle.
+     * @param f
+     */
+    private void addFile(File f) {
+        if (playlist.add(f)) {
+            catalog.add(f);
+        }
+    }
+
+    /**
+     * Removes a file from the image list and the photo catalog.
+     * @param f
+     */
+    private void removeFile(File f) {
+        if (!playlist.remove(f)) {
+            return;
+        }
+
+        catalog.remove(f);
+
+        if (imageFileListener != null) {
+            imageFileListener.imageFileRemoved(f);
+        }
+    }
+
+    private boolean isImageFile(File f) {
+        return f.isFile() && f.canRead() && !f.isHidden();
+    }
+
+    /**
+     * Checks if a listed file may go into the image list. Files modified very recently are let through, they are held
+     * back until they are stable and only checked then.
+     * @param f
+     * @param now
+     * @return
+     */
+    private boolean isCandidateFile(File f, long now) {
+        if (f.equals(pauseFile)) {
+            return false;
+        }
+
+        return now - f.lastModified() < fileStableTime || hasImageFormat(f);
+    }
+
+    /**
+     * Checks that a file starts with the magic bytes of a supported image format. Files already in the image list are
+     * not read again, files that don't match are quarantined.
+     * @param f
+     * @return
+     */
+    private boolean hasImageFormat(File f) {
+        if (playlist.contains(f)) {
+            return true;
+        }
+        else if (catalog.isQuarantined(f)) {
+            return false;
+        }
+
+        if (ImageFormat.detect(f) == null) {
+            Log.verbose("Not a supported image file: " + f.getPath());
+            catalog.quarantine(f, PhotoCatalog.QUARANTINE_NOT_IMAGE);
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean isImageDirectory(File f) {
+        return f.isDirectory() && f.canRead() && !f.isHidden() &&
+                !f.toPath().toAbsolutePath().normalize().equals(cacheDirPath);
+    }
+
+    private void setPaused(boolean pause) {
+        if (pause && !paused) {
+            paused = true;
+            pauseListener.pauseEvent();
+        }
+        else if (!pause && paused) {
             paused = false;
             pauseListener.resumeEvent();
         }
     }
 
-    private class WatcherThread extends Thread {
-        WatchService dirWatcher;
-
-        public WatcherThread(WatchService dirWatcher) {
-            this.dirWatcher = dirWatcher;
+    /**
+     * Creates the change detector for the configured mode. In auto mode the image directory is probed for change
+     * notifications first, which takes up to the probe window.
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private ChangeDetector createChangeDetector()
+            throws IOException, InterruptedException
+    {
+        if (ChangeDetector.MODE_POLL.equals(changeDetection)) {
+            Log.info("Polling image directory for changes");
+            return new PollingDetector(this, pollInterval, pollMaxInterval);
+        }
+        else if (ChangeDetector.MODE_AUTO.equals(changeDetection) &&
+                !WatchServiceDetector.probe(imageDirFile, PROBE_WINDOW))
+        {
+            Log.info("No change notifications from the image directory, polling for changes instead");
+            return new PollingDetector(this, pollInterval, pollMaxInterval);
         }
 
+        Log.info("Watching image directory for change notifications");
+        return new WatchServiceDetector(this);
+    }
+
+    /**
+     * Sets up the change detector, brings a restored image list up to date and then applies changes as they are
+     * detected until watching is stopped.
+     */
+    private class MonitorThread extends Thread {
+
         @Override
         public void run() {
             Log.verbose("Started watching directory");
 
             try {
-                for (;;) {
-                    WatchKey key = dirWatcher.take();
-                    key.pollEvents();
+                ChangeDetector detector = createChangeDetector();
 
-                    if (key.isValid()) {
-                        sync();
+                synchronized (ImageDirectory.this) {
+                    if (stopping) {
+                        detector.close();
+                        return;
                     }
 
-                    key.reset();
+                    changeDetector = detector;
+                    for (File dir : directories) {
+                        registerDirectory(dir);
+                    }
+                }
+
+                reconcileCatalog();
+
+                for (;;) {
+                    detector.detectChanges();
+                    checkPendingFiles();
                 }
             }
             catch (Exception e) {
@@ -233,4 +894,80 @@ public class ImageDirectory {
         }
     }
 
+    /**
+     * Lists a single directory and forks an action for each child directory in recursive mode.
+     */
+    @SuppressWarnings("serial")
+    private class ListDirectoryAction extends RecursiveAction {
+        File dir;
+        Queue<File> files;
+        Queue<File> dirs;
+
+        ListDirectoryAction(File dir, Queue<File> files, Queue<File> dirs) {
+            this.dir = dir;
+            this.files = files;
+            this.dirs = dirs;
+        }
+
+        @Override
+        protected void compute() {
+            dirs.add(dir);
+
+            // the modification time is taken before listing so that a change during listing is caught next time
+            long modified = dir.lastModified();
+            File[] entries = dir.listFiles();
+            if (entries == null) {
+                return;
+            }
+            catalog.setDirectory(dir, modified);
+
+            List<ListDirectoryAction> children = new ArrayList<>();
+            long listTime = System.currentTimeMillis();
+            for (File f : entries) {
+                if (isImageFile(f)) {
+                    if (isCandidateFile(f, listTime)) {
+                        files.add(f);
+                    }
+                }
+                else if (recursive && isImageDirectory(f)) {
+                    children.add(new ListDirectoryAction(f, files, dirs));
+                }
+            }
+
+            if (!children.isEmpty()) {
+                invokeAll(children);
+            }
+        }
+    }
+
+    /**
+     * Size and modification time of a file that is not yet stable.
+     */
+    private static class PendingFile {
+        long size;
+        long modified;
+        long stableSince;
+
+        PendingFile(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+            this.stableSince = System.currentTimeMillis();
+        }
+
+        /**
+         * Updates the size and modification time.
+         * @return true if either has changed
+         */
+        boolean update(long size, long modified) {
+            if (size == this.size && modified == this.modified) {
+                return false;
+            }
+
+            this.size = size;
+            this.modified = modified;
+            this.stableSince = System.currentTimeMillis();
+            return true;
+        }
+    }
+
 }
@@ -0,0 +1,59 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A source of photos with its own image list, see ImageSources.
+ */
+public interface ImageSource {
+
+    void startWatching() throws IOException;
+    void stopWatching();
+
+    void setImageFileListener(ImageFileListener imageFileListener);
+
+    /**
+     * Gets the directory or archive the photos come from.
+     * @return null if the source has no photos to show
+     */
+    File getRoot();
+
+    /**
+     * Brings an image list restored from the photo catalog up to date, for sources that are not going to be watched.
+     */
+    void reconcileCatalog();
+
+    List<File> getImageFiles();
+    File nextFile();
+    int getImageCount();
+    boolean containsFile(File imageFile);
+
+    /**
+     * Takes a file that failed to decode out of the image list.
+     * @param imageFile
+     */
+    void quarantineFile(File imageFile);
+
+}
@@ -0,0 +1,477 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import net.igorkromin.jphotoframe.archive.ZipArchive;
+import net.igorkromin.jphotoframe.cache.CacheKey;
+import net.igorkromin.jphotoframe.catalog.PhotoCatalog;
+import net.igorkromin.jphotoframe.catalog.PhotoInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import static net.igorkromin.jphotoframe.ConfigOptions.DEFAULT_CACHE_DIRECTORY;
+
+/**
+ * Merges the photos of one or more image directories, for example a local directory, a USB stick and a network share.
+ * ZIP archives can be given in place of a directory, their photos are read without extracting them.
+ *
+ * Each image directory keeps its own image list and is listed and watched on its own thread, so a slow directory does
+ * not hold up the others. Startup only waits for the first directory to be listed, the rest join in as their listing
+ * finishes. Photos are picked from the directories in proportion to their weights using smooth weighted round-robin,
+ * which spreads the picks from each directory evenly rather than in runs. Only the next directory to pick from is
+ * worked out, the image lists are never merged into one.
+ *
+ * All image directories share a single photo catalog. The photo frame is paused while any of the image directories
+ * has a pause file.
+ */
+public class ImageSources {
+
+    private List<ImageSource> sources = new CopyOnWriteArrayList<>();
+    private List<Integer> sourceWeights = new ArrayList<>();
+    private int[] currentWeights = new int[0];
+    private int[] weights;
+    private int pendingSources;
+    private PhotoCatalog catalog = null;
+    private File cacheDirFile = null;
+    private CacheKey cacheKey;
+    private PauseListener pauseListener;
+    private ImageFileListener imageFileListener = null;
+    private boolean watching = false;
+    private boolean reconciled = false;
+    private boolean stopped = false;
+    private boolean[] paused;
+    private int pausedCount = 0;
+
+    /**
+     * Sets up all of the configured image directories. The directories are listed in parallel, this waits until the
+     * first of them is available and leaves the others to be added as soon as they have been listed. Directories that
+     * are not available are left out.
+     * @param config
+     * @param cacheKey
+     * @param pauseListener
+     */
+    public ImageSources(final ConfigOptions config, final CacheKey cacheKey, PauseListener pauseListener) {
+        if (pauseListener == null) {
+            throw new RuntimeException("Can't have a null pause listener");
+        }
+        this.pauseListener = pauseListener;
+        this.cacheKey = cacheKey;
+
+        final String[] dirs = config.getImageDirectories();
+        weights = config.getImageDirectoryWeights();
+        paused = new boolean[dirs.length];
+        pendingSources = dirs.length;
+
+        String cacheDir = config.getCacheDirectory();
+        if (cacheDir != null && !DEFAULT_CACHE_DIRECTORY.equals(cacheDir) && new File(cacheDir).isDirectory()) {
+            cacheDirFile = new File(cacheDir);
+            catalog = new PhotoCatalog(cacheDirFile);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(dirs.length, 1), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                // a listing stuck on an unreachable network share must not keep the application from exiting
+                Thread t = new Thread(r, "ImageSourceLoader");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        for (int i = 0; i < dirs.length; i++) {
+            final int index = i;
+            final String dir = dirs[i];
+            final PauseListener sourcePauseListener = createPauseListener(i);
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ImageSource source = null;
+
+                    try {
+                        if (ArchiveImageSource.isArchive(dir)) {
+                            source = new ArchiveImageSource(new File(dir));
+                        }
+                        else {
+                            source = new ImageDirectory(dir, config, cacheKey, catalog, sourcePauseListener);
+                        }
+                    }
+                    catch (Exception e) {
+                        Log.error("Could not read image directory: " + dir, e);
+                    }
+
+                    sourceLoaded(index, source);
+                }
+            });
+        }
+        executor.shutdown();
+
+        synchronized (this) {
+            try {
+                while (sources.isEmpty() && pendingSources > 0) {
+                    wait();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while reading image directories");
+            }
+
+            if (sources.isEmpty()) {
+                throw new RuntimeException("No image directories available");
+            }
+        }
+    }
+
+    /**
+     * Waits until every image directory has either been listed or has failed, for callers that need all of the photos
+     * rather than just the first available directory.
+     */
+    public synchronized void waitForSources() {
+        try {
+            while (pendingSources > 0) {
+                wait();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds an image directory once it has been listed and brings it up to the same state as the ones already added.
+     * @param index Position of the directory in the configuration
+     * @param source null if the directory could not be read
+     */
+    private synchronized void sourceLoaded(int index, ImageSource source) {
+        pendingSources--;
+        notifyAll();
+
+        if (source == null) {
+            return;
+        }
+
+        if (stopped) {
+            source.stopWatching();
+            return;
+        }
+
+        sources.add(source);
+        sourceWeights.add(weights[index]);
+        currentWeights = Arrays.copyOf(currentWeights, sources.size());
+
+        if (imageFileListener != null) {
+            addImageFileListener(source);
+        }
+
+        if (watching) {
+            try {
+                source.startWatching();
+            }
+            catch (IOException e) {
+                Log.error("Could not start watching image directory: " + source.getRoot(), e);
+            }
+        }
+        else if (reconciled) {
+            source.reconcileCatalog();
+        }
+
+        if (sources.size() > 1) {
+            Log.info("Showing photos from " + sources.size() + " image directories, weights = " + sourceWeights);
+        }
+    }
+
+    /**
+     * Starts watching all image directories and scanning photos for the catalog. Image directories that are still being
+     * listed start watching once they are added.
+     * @throws IOException
+     */
+    public synchronized void startWatching()
+            throws IOException
+    {
+        watching = true;
+
+        for (ImageSource source : sources) {
+            source.startWatching();
+        }
+
+        if (catalog != null) {
+            catalog.startScanning();
+        }
+    }
+
+    /**
+     * Stops watching all image directories and saves the catalog. Image directories that are still being listed are
+     * dropped once their listing finishes.
+     */
+    public void stopWatching() {
+        synchronized (this) {
+            stopped = true;
+            watching = false;
+        }
+
+        for (ImageSource source : sources) {
+            source.stopWatching();
+        }
+
+        if (catalog != null) {
+            catalog.stopScanning();
+        }
+    }
+
+    /**
+     * Sets the listener for removed image files. The listener is told about the image list of each image directory,
+     * straight away for the ones already added and later for the ones still being listed.
+     * @param imageFileListener
+     */
+    public synchronized void setImageFileListener(ImageFileListener imageFileListener) {
+        this.imageFileListener = imageFileListener;
+
+        for (ImageSource source : sources) {
+            addImageFileListener(source);
+        }
+    }
+
+    private void addImageFileListener(ImageSource source) {
+        source.setImageFileListener(imageFileListener);
+
+        if (source.getRoot() != null) {
+            imageFileListener.imageSourceLoaded(source.getRoot(), source.getImageFiles());
+        }
+    }
+
+    /**
+     * Returns the cache directory.
+     * @return null if no valid cache directory was specified
+     */
+    public File getCacheDirectory() {
+        return cacheDirFile;
+    }
+
+    /**
+     * Brings image lists restored from the photo catalog up to date, all image directories in parallel. This is done
+     * automatically once watching starts, it only needs to be called if the directories are not going to be watched.
+     * Image directories that are still being listed are brought up to date once they are added.
+     */
+    public void reconcileCatalog() {
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        synchronized (this) {
+            reconciled = true;
+
+            for (final ImageSource source : sources) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        source.reconcileCatalog();
+                        return null;
+                    }
+                });
+            }
+        }
+
+        for (Future<Void> result : runAll(tasks)) {
+            try {
+                result.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                Log.error("Could not reconcile image directory with the photo catalog", e.getCause());
+            }
+        }
+    }
+
+    public PhotoInfo getPhotoInfo(File imageFile) {
+        return (catalog != null) ? catalog.get(imageFile) : null;
+    }
+
+    /**
+     * Returns a copy of the image lists of all image directories.
+     * @return
+     */
+    public List<File> getImageFiles() {
+        List<File> files = new ArrayList<>();
+
+        for (ImageSource source : sources) {
+            files.addAll(source.getImageFiles());
+        }
+
+        return files;
+    }
+
+    /**
+     * Gets the file object for the next image to be shown. Each image directory that has photos adds its weight to
+     * its current weight, the one with the highest current weight is picked and has the total weight taken off.
+     * @return null if there are no photos in any of the image directories
+     */
+    public synchronized File nextFile() {
+        if (sources.size() == 1) {
+            return sources.get(0).nextFile();
+        }
+
+        // an image directory can empty out between the pick and drawing the file, so try the others too
+        for (int attempt = 0; attempt < sources.size(); attempt++) {
+            int picked = -1;
+            int totalWeight = 0;
+
+            for (int i = 0; i < sources.size(); i++) {
+                if (sources.get(i).getImageCount() == 0) {
+                    continue;
+                }
+
+                currentWeights[i] += sourceWeights.get(i);
+                totalWeight += sourceWeights.get(i);
+
+                if (picked < 0 || currentWeights[i] > currentWeights[picked]) {
+                    picked = i;
+                }
+            }
+
+            if (picked < 0) {
+                return null;
+            }
+
+            currentWeights[picked] -= totalWeight;
+
+            File f = sources.get(picked).nextFile();
+            if (f != null) {
+                return f;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if a file exists and is readable. Entries of open archives always exist.
+     * @param imageFile
+     * @return
+     */
+    public boolean fileExists(File imageFile) {
+        if (imageFile == null) {
+            return false;
+        }
+
+        return ZipArchive.getEntry(imageFile) != null || (imageFile.exists() && imageFile.canRead());
+    }
+
+    /**
+     * Returns the cached image file for a (non-cached) image file, see CacheKey. No checks are done on whether the
+     * returned file exists.
+     * @param imageFile
+     * @return null if there is no cache directory or the image file can't be read
+     */
+    public File getCachedImageFile(File imageFile) {
+        if (imageFile == null || cacheDirFile == null) {
+            return null;
+        }
+
+        String key = cacheKey.getKey(imageFile);
+        if (key == null) {
+            return null;
+        }
+
+        return new File(cacheDirFile.getAbsoluteFile(), cacheKey.getFileName(key));
+    }
+
+    /**
+     * Quarantines a file that failed to decode, in the image directory it belongs to.
+     * @param imageFile
+     */
+    public void quarantineFile(File imageFile) {
+        for (ImageSource source : sources) {
+            if (source.containsFile(imageFile)) {
+                source.quarantineFile(imageFile);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Creates the pause listener for one image directory, which pauses the photo frame when the first image directory
+     * is paused and resumes it when the last one is resumed.
+     * @param index
+     * @return
+     */
+    private PauseListener createPauseListener(final int index) {
+        return new PauseListener() {
+            @Override
+            public void pauseEvent() {
+                setPaused(index, true);
+            }
+
+            @Override
+            public void resumeEvent() {
+                setPaused(index, false);
+            }
+        };
+    }
+
+    private synchronized void setPaused(int index, boolean pause) {
+        if (paused[index] == pause) {
+            return;
+        }
+
+        paused[index] = pause;
+        pausedCount += (pause) ? 1 : -1;
+
+        if (pause && pausedCount == 1) {
+            pauseListener.pauseEvent();
+        }
+        else if (!pause && pausedCount == 0) {
+            pauseListener.resumeEvent();
+        }
+    }
+
+    /**
+     * Runs tasks with a thread for each and waits for all of them.
+     * @param tasks
+     * @return
+     */
+    private static <T> List<Future<T>> runAll(List<Callable<T>> tasks) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(tasks.size(), 1));
+        try {
+            return executor.invokeAll(tasks);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reconciling image directories");
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+}
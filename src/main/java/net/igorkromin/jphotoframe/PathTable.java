@@ -0,0 +1,405 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compact store of file paths, addressed by int ids.
+ *
+ * Each distinct directory is stored once as a string. File names are stored as UTF-8 bytes packed into a single byte
+ * array, and the directory, name offset and name length of each path are kept in parallel primitive arrays. An open
+ * addressing hash table of ids allows paths to be looked up without creating an object per path. This takes a small
+ * fraction of the memory needed for a File object per path, File objects are only created when a path is read back.
+ *
+ * Ids of removed paths are reused. The name bytes of removed paths are reclaimed once they make up more than half of
+ * the name storage.
+ *
+ * The ids of each directory are chained together in a doubly linked list, so the paths in a directory can be found
+ * without going through the whole table.
+ *
+ * This class is not thread-safe.
+ */
+public class PathTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_COMPACT_BYTES = 64 * 1024;
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+
+    private ArrayList<String> dirs = new ArrayList<>();
+    private HashMap<String, Integer> dirIds = new HashMap<>();
+
+    private int[] dirOf = new int[INITIAL_CAPACITY];
+    private int[] nameOffset = new int[INITIAL_CAPACITY];
+    private short[] nameLength = new short[INITIAL_CAPACITY];
+    private int[] hashOf = new int[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+
+    // per directory linked lists of ids, -1 ends a list
+    private int[] dirHead = new int[INITIAL_CAPACITY];
+    private int[] nextInDir = new int[INITIAL_CAPACITY];
+    private int[] prevInDir = new int[INITIAL_CAPACITY];
+    private int rootHead = -1;
+
+    private byte[] names = new byte[INITIAL_CAPACITY * 16];
+    private int namesUsed = 0;
+    private int namesGarbage = 0;
+
+    // ids plus one, so that 0 marks an empty slot
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int slotsDeleted = 0;
+
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int nextId = 0;
+    private int size = 0;
+
+    /**
+     * Adds a path to the table.
+     * @param f
+     * @return id of the path, the existing id if the path is already in the table
+     */
+    public int add(File f) {
+        int dirId = getDirId(f.getParent(), true);
+        byte[] name = f.getName().getBytes(StandardCharsets.UTF_8);
+        int hash = hash(dirId, name);
+
+        int existing = find(dirId, name, hash);
+        if (existing >= 0) {
+            return existing;
+        }
+
+        int id = (freeCount > 0) ? freeIds[--freeCount] : nextId++;
+        ensureCapacity(id + 1);
+
+        dirOf[id] = dirId;
+        nameOffset[id] = storeName(name);
+        nameLength[id] = (short) name.length;
+        hashOf[id] = hash;
+        used[id] = true;
+        linkToDir(id, dirId);
+        size++;
+
+        // a rehash inserts every path in use, including this one
+        if ((size + slotsDeleted) * 2 > slots.length) {
+            rehash();
+        }
+        else {
+            insertSlot(id, hash);
+        }
+
+        return id;
+    }
+
+    /**
+     * Looks up the id of a path.
+     * @param f
+     * @return -1 if the path is not in the table
+     */
+    public int find(File f) {
+        int dirId = getDirId(f.getParent(), false);
+        if (dirId < 0 && f.getParent() != null) {
+            return -1;
+        }
+
+        byte[] name = f.getName().getBytes(StandardCharsets.UTF_8);
+        return find(dirId, name, hash(dirId, name));
+    }
+
+    /**
+     * Removes a path from the table. The id may be reused by a later add().
+     * @param id
+     */
+    public void remove(int id) {
+        if (id < 0 || id >= nextId || !used[id]) {
+            return;
+        }
+
+        int mask = slots.length - 1;
+        int slot = hashOf[id] & mask;
+        while (slots[slot] != EMPTY) {
+            if (slots[slot] == id + 1) {
+                slots[slot] = DELETED;
+                slotsDeleted++;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[id] = false;
+        unlinkFromDir(id);
+        namesGarbage += nameLength[id] & 0xffff;
+        size--;
+
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+
+        if (namesGarbage > MIN_COMPACT_BYTES && namesGarbage > namesUsed / 2) {
+            compactNames();
+        }
+    }
+
+    /**
+     * Creates a File object for a path in the table.
+     * @param id
+     * @return
+     */
+    public File getFile(int id) {
+        String name = new String(names, nameOffset[id], nameLength[id] & 0xffff, StandardCharsets.UTF_8);
+        int dirId = dirOf[id];
+
+        return (dirId < 0) ? new File(name) : new File(dirs.get(dirId), name);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the ids of the paths in a directory.
+     * @param dir
+     * @param includeChildren Whether to include paths in all of the directories below dir as well
+     * @return
+     */
+    public int[] getIds(File dir, boolean includeChildren) {
+        String path = dir.getPath();
+        String prefix = path + File.separator;
+
+        int[] ids = new int[INITIAL_CAPACITY];
+        int n = 0;
+
+        for (int dirId = 0; dirId < dirs.size(); dirId++) {
+            String d = dirs.get(dirId);
+
+            if (d.equals(path) || (includeChildren && d.startsWith(prefix))) {
+                for (int id = dirHead[dirId]; id >= 0; id = nextInDir[id]) {
+                    if (n == ids.length) {
+                        ids = Arrays.copyOf(ids, n * 2);
+                    }
+                    ids[n++] = id;
+                }
+            }
+        }
+
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Returns one more than the largest id in use, ids are always below this value.
+     * @return
+     */
+    public int getIdLimit() {
+        return nextId;
+    }
+
+    /**
+     * Gets the id of a directory, paths without a directory have the id -1.
+     * @param dir
+     * @param create Whether to add the directory if it is not known yet
+     * @return -1 if the directory is not known and create is false
+     */
+    private int getDirId(String dir, boolean create) {
+        if (dir == null) {
+            return -1;
+        }
+
+        Integer dirId = dirIds.get(dir);
+        if (dirId == null) {
+            if (!create) {
+                return -1;
+            }
+
+            dirId = dirs.size();
+            dirs.add(dir);
+            dirIds.put(dir, dirId);
+
+            if (dirId >= dirHead.length) {
+                dirHead = Arrays.copyOf(dirHead, dirHead.length * 2);
+            }
+            dirHead[dirId] = -1;
+        }
+
+        return dirId;
+    }
+
+    private int find(int dirId, byte[] name, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while (slots[slot] != EMPTY) {
+            int id = slots[slot] - 1;
+
+            if (id >= 0 && used[id] && hashOf[id] == hash && dirOf[id] == dirId && nameEquals(id, name)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void linkToDir(int id, int dirId) {
+        int head = (dirId < 0) ? rootHead : dirHead[dirId];
+
+        prevInDir[id] = -1;
+        nextInDir[id] = head;
+        if (head >= 0) {
+            prevInDir[head] = id;
+        }
+
+        if (dirId < 0) {
+            rootHead = id;
+        }
+        else {
+            dirHead[dirId] = id;
+        }
+    }
+
+    private void unlinkFromDir(int id) {
+        int prev = prevInDir[id];
+        int next = nextInDir[id];
+
+        if (next >= 0) {
+            prevInDir[next] = prev;
+        }
+
+        if (prev >= 0) {
+            nextInDir[prev] = next;
+        }
+        else if (dirOf[id] < 0) {
+            rootHead = next;
+        }
+        else {
+            dirHead[dirOf[id]] = next;
+        }
+    }
+
+    private boolean nameEquals(int id, byte[] name) {
+        if ((nameLength[id] & 0xffff) != name.length) {
+            return false;
+        }
+
+        int offset = nameOffset[id];
+        for (int i = 0; i < name.length; i++) {
+            if (names[offset + i] != name[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int storeName(byte[] name) {
+        if (namesUsed + name.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesUsed + name.length));
+        }
+
+        int offset = namesUsed;
+        System.arraycopy(name, 0, names, offset, name.length);
+        namesUsed += name.length;
+
+        return offset;
+    }
+
+    /**
+     * Copies the names of the paths still in use into a new byte array, dropping the names of removed paths.
+     */
+    private void compactNames() {
+        byte[] compacted = new byte[Math.max(namesUsed - namesGarbage, INITIAL_CAPACITY) * 2];
+        int offset = 0;
+
+        for (int id = 0; id < nextId; id++) {
+            if (used[id]) {
+                int length = nameLength[id] & 0xffff;
+                System.arraycopy(names, nameOffset[id], compacted, offset, length);
+                nameOffset[id] = offset;
+                offset += length;
+            }
+        }
+
+        names = compacted;
+        namesUsed = offset;
+        namesGarbage = 0;
+    }
+
+    private void insertSlot(int id, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        while (slots[slot] != EMPTY && slots[slot] != DELETED) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (slots[slot] == DELETED) {
+            slotsDeleted--;
+        }
+        slots[slot] = id + 1;
+    }
+
+    private void rehash() {
+        int capacity = slots.length;
+        while (size * 2 > capacity / 2) {
+            capacity *= 2;
+        }
+
+        slots = new int[Math.max(capacity, INITIAL_CAPACITY * 2)];
+        slotsDeleted = 0;
+
+        for (int id = 0; id < nextId; id++) {
+            if (used[id]) {
+                insertSlot(id, hashOf[id]);
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= dirOf.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, dirOf.length * 2);
+        dirOf = Arrays.copyOf(dirOf, newCapacity);
+        nameOffset = Arrays.copyOf(nameOffset, newCapacity);
+        nameLength = Arrays.copyOf(nameLength, newCapacity);
+        hashOf = Arrays.copyOf(hashOf, newCapacity);
+        used = Arrays.copyOf(used, newCapacity);
+        nextInDir = Arrays.copyOf(nextInDir, newCapacity);
+        prevInDir = Arrays.copyOf(prevInDir, newCapacity);
+    }
+
+    private static int hash(int dirId, byte[] name) {
+        int h = dirId * 0x9e3779b9;
+        for (byte b : name) {
+            h = 31 * h + b;
+        }
+
+        // spread the bits so that the low bits used for the slot index are well mixed
+        return h ^ (h >>> 16);
+    }
+
+}
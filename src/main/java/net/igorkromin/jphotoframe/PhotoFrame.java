@@ -20,13 +20,14 @@
 
 package net.igorkromin.jphotoframe;
 
+import net.igorkromin.jphotoframe.img.MemoryGovernor;
 import net.igorkromin.jphotoframe.ui.Controller;
 import net.igorkromin.jphotoframe.ui.ModelData;
 import net.igorkromin.jphotoframe.ui.View;
 
 /**
  * Entry point to the JPhotoFrame App. This class is mostly responsible for loading the config and then creating
- * either the rotation utility class or the controller class for the photo frame.
+ * either the rotation utility class, the pre-cache utility class or the controller class for the photo frame.
  */
 public class PhotoFrame {
 
@@ -42,13 +43,21 @@ public class PhotoFrame {
                 Log.setVerbose(true);
             }
 
-            // pick between the rotation utility or the normal photo frame operation
+            // pick between the rotation utility, the pre-cache utility or the normal photo frame operation
             if (argsParser.fixRotation()) {
                 RotationFixer rotationFixer = new RotationFixer(argsParser.configPath());
                 rotationFixer.start();
             }
+            else if (argsParser.preCache()) {
+                ConfigOptions config = new ConfigOptions(argsParser.configPath());
+                MemoryGovernor.setBudget(config.getDecodeMemoryFraction());
+
+                PreCacher preCacher = new PreCacher(config);
+                preCacher.start();
+            }
             else {
                 ConfigOptions config = new ConfigOptions((argsParser.configPath() != null) ? argsParser.configPath() : null);
+                MemoryGovernor.setBudget(config.getDecodeMemoryFraction());
 
                 ModelData data = new ModelData();
                 View frame = new View(config, data);
@@ -0,0 +1,362 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Shuffled list of image files that is safe to use from several threads.
+ *
+ * Files are shuffled lazily with one Fisher-Yates step per file drawn, so there is no full reshuffle at the end of
+ * each pass. Files not yet shown in the current pass are kept at the front of the list and shown files at the back.
+ * Adding and removing files takes constant time and keeps the current pass going, a new file is shown during the
+ * current pass.
+ *
+ * The most recently shown files are held back at the start of a new pass so the same photo is not shown twice in a
+ * row across a reshuffle. Before each draw any recent files in the unshown part are swapped to its end and left out of
+ * the draw, so a recent file is only shown again once every other unshown file has been.
+ *
+ * Paths are kept in a PathTable and the list itself only holds int ids, so a playlist of a million files takes tens
+ * of megabytes rather than hundreds. File objects are only created when a file is drawn or the files are listed.
+ *
+ * Reads share a read lock, drawing a file and updates take the write lock. Several changes can be applied with a
+ * single lock using update().
+ */
+public class Playlist {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_RECENT_HISTORY = 100;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Random random = new Random();
+
+    private PathTable paths = new PathTable();
+
+    // path ids in shuffled order and the position of each id in that order
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int[] position = new int[INITIAL_CAPACITY];
+    private int count = 0;
+    private int remaining = 0;
+
+    // ring buffer of recently shown path ids, oldest first
+    private int[] recent = new int[MAX_RECENT_HISTORY];
+    private int recentStart = 0;
+    private int recentCount = 0;
+
+    /**
+     * Draws the next file to show. Once all files have been shown a new pass is started.
+     * @return null if the playlist is empty
+     */
+    public File next() {
+        lock.writeLock().lock();
+        try {
+            if (count == 0) {
+                return null;
+            }
+
+            if (remaining == 0) {
+                remaining = count;
+            }
+
+            // move files shown recently to the end of the unshown part and draw from the rest, they can only be in
+            // the unshown part after a new pass started
+            int eligible = remaining;
+            for (int i = 0; i < recentCount; i++) {
+                int pos = position[recent[(recentStart + i) % MAX_RECENT_HISTORY]];
+                if (pos < eligible) {
+                    eligible--;
+                    swap(pos, eligible);
+                }
+            }
+
+            int pick = random.nextInt((eligible > 0) ? eligible : remaining);
+
+            remaining--;
+            swap(pick, remaining);
+
+            int id = order[remaining];
+            addRecent(id);
+
+            return paths.getFile(id);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a file to the playlist, it will be shown in the current pass.
+     * @param f
+     * @return false if the file is already in the playlist
+     */
+    public boolean add(File f) {
+        lock.writeLock().lock();
+        try {
+            return addEntry(f);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a file from the playlist.
+     * @param f
+     * @return false if the file was not in the playlist
+     */
+    public boolean remove(File f) {
+        lock.writeLock().lock();
+        try {
+            return removeEntry(f);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a batch of changes under a single lock.
+     * @param added Files to add
+     * @param removed Files to remove
+     */
+    public void update(Collection<File> added, Collection<File> removed) {
+        lock.writeLock().lock();
+        try {
+            for (File f : removed) {
+                removeEntry(f);
+            }
+
+            ensureOrderCapacity(count + added.size());
+            for (File f : added) {
+                addEntry(f);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(File f) {
+        lock.readLock().lock();
+        try {
+            return paths.find(f) >= 0;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the files in the playlist, in no particular order.
+     * @return
+     */
+    public List<File> getFiles() {
+        lock.readLock().lock();
+        try {
+            List<File> files = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                files.add(paths.getFile(order[i]));
+            }
+            return files;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the files in a directory, only creating File objects for the files in that directory.
+     * @param dir
+     * @param includeChildren Whether to include the files in all of the directories below dir as well
+     * @return
+     */
+    public List<File> getFiles(File dir, boolean includeChildren) {
+        lock.readLock().lock();
+        try {
+            int[] ids = paths.getIds(dir, includeChildren);
+
+            List<File> files = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                files.add(paths.getFile(id));
+            }
+            return files;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the files in the playlist that are not in the given collection. File objects are only created for the
+     * files returned.
+     * @param keep
+     * @return
+     */
+    public List<File> getFilesNotIn(Collection<File> keep) {
+        lock.readLock().lock();
+        try {
+            boolean[] kept = new boolean[paths.getIdLimit()];
+            for (File f : keep) {
+                int id = paths.find(f);
+                if (id >= 0) {
+                    kept[id] = true;
+                }
+            }
+
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (!kept[order[i]]) {
+                    files.add(paths.getFile(order[i]));
+                }
+            }
+            return files;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean addEntry(File f) {
+        if (paths.find(f) >= 0) {
+            return false;
+        }
+
+        int id = paths.add(f);
+        ensureOrderCapacity(count + 1);
+        if (id >= position.length) {
+            position = Arrays.copyOf(position, Math.max(id + 1, position.length * 2));
+        }
+
+        order[count] = id;
+        position[id] = count;
+        count++;
+
+        // move the new file from the end of the list to the end of the unshown part
+        swap(count - 1, remaining);
+        remaining++;
+
+        return true;
+    }
+
+    private boolean removeEntry(File f) {
+        int id = paths.find(f);
+        if (id < 0) {
+            return false;
+        }
+
+        // an unshown file first moves to the end of the unshown part, so that part stays in one piece
+        if (position[id] < remaining) {
+            remaining--;
+            swap(position[id], remaining);
+        }
+
+        swap(position[id], count - 1);
+        count--;
+
+        // the id is reused by the path table, so it must not be left in the recent history
+        removeRecent(id);
+        paths.remove(id);
+
+        return true;
+    }
+
+    private boolean isRecent(int id) {
+        for (int i = 0; i < recentCount; i++) {
+            if (recent[(recentStart + i) % MAX_RECENT_HISTORY] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a shown file in the recent history. The history is kept to at most half of the playlist so that there
+     * are always other files to pick from.
+     * @param id
+     */
+    private void addRecent(int id) {
+        int maxHistory = Math.min(MAX_RECENT_HISTORY, count / 2);
+
+        if (maxHistory > 0 && !isRecent(id)) {
+            if (recentCount == MAX_RECENT_HISTORY) {
+                recentStart = (recentStart + 1) % MAX_RECENT_HISTORY;
+                recentCount--;
+            }
+            recent[(recentStart + recentCount) % MAX_RECENT_HISTORY] = id;
+            recentCount++;
+        }
+
+        while (recentCount > maxHistory) {
+            recentStart = (recentStart + 1) % MAX_RECENT_HISTORY;
+            recentCount--;
+        }
+    }
+
+    private void removeRecent(int id) {
+        int kept = 0;
+        for (int i = 0; i < recentCount; i++) {
+            int recentId = recent[(recentStart + i) % MAX_RECENT_HISTORY];
+            if (recentId != id) {
+                recent[(recentStart + kept) % MAX_RECENT_HISTORY] = recentId;
+                kept++;
+            }
+        }
+        recentCount = kept;
+    }
+
+    private void ensureOrderCapacity(int capacity) {
+        if (capacity > order.length) {
+            order = Arrays.copyOf(order, Math.max(capacity, order.length * 2));
+        }
+    }
+
+    private void swap(int i, int j) {
+        if (i == j) {
+            return;
+        }
+
+        int a = order[i];
+        int b = order[j];
+
+        order[i] = b;
+        order[j] = a;
+        position[a] = j;
+        position[b] = i;
+    }
+
+}
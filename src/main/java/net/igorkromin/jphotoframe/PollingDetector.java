@@ -0,0 +1,104 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import java.io.File;
+
+/**
+ * Picks up directory changes by polling, for file systems that don't send change notifications. Each poll only
+ * compares the modification times of the directories with the ones recorded in the photo catalog, and only the
+ * directories that changed are listed again. Adding, removing or renaming a file changes the modification time of its
+ * directory. Files that are changed in place are not picked up.
+ *
+ * The time between polls doubles each time nothing has changed, up to the maximum interval, and drops back to the
+ * minimum interval as soon as a change is found.
+ */
+public class PollingDetector implements ChangeDetector {
+
+    private ImageDirectory imageDirectory;
+    private long minInterval;
+    private long maxInterval;
+    private long interval;
+    private long nextPoll;
+
+    /**
+     * @param imageDirectory
+     * @param minInterval Shortest time between polls, in milliseconds
+     * @param maxInterval Longest time between polls, in milliseconds
+     */
+    public PollingDetector(ImageDirectory imageDirectory, long minInterval, long maxInterval) {
+        this.imageDirectory = imageDirectory;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.interval = minInterval;
+        this.nextPoll = System.currentTimeMillis() + minInterval;
+    }
+
+    /**
+     * Does nothing, the directories and their modification times are kept by the image directory.
+     * @param dir
+     */
+    @Override
+    public void watchDirectory(File dir) {}
+
+    /**
+     * Does nothing, the directories and their modification times are kept by the image directory.
+     * @param dir
+     */
+    @Override
+    public void unwatchDirectory(File dir) {}
+
+    @Override
+    public void detectChanges()
+            throws InterruptedException
+    {
+        long wait = nextPoll - System.currentTimeMillis();
+
+        if (wait > 0) {
+            // wake up regularly while files are pending so they are added once they are stable
+            if (imageDirectory.hasPendingFiles()) {
+                wait = Math.min(wait, ImageDirectory.STABLE_CHECK_INTERVAL);
+            }
+
+            Thread.sleep(wait);
+            if (System.currentTimeMillis() < nextPoll) {
+                return;
+            }
+        }
+
+        int changedDirs = imageDirectory.pollDirectories();
+        long newInterval = (changedDirs > 0) ? minInterval : Math.min(interval * 2, maxInterval);
+
+        if (newInterval != interval) {
+            Log.verbose("Polling for directory changes every " + newInterval + "ms");
+            interval = newInterval;
+        }
+
+        nextPoll = System.currentTimeMillis() + interval;
+    }
+
+    /**
+     * Does nothing, polling stops when the thread calling detectChanges() is interrupted.
+     */
+    @Override
+    public void close() {}
+
+}
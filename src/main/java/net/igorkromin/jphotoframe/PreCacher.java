@@ -0,0 +1,263 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import net.igorkromin.jphotoframe.cache.CacheFile;
+import net.igorkromin.jphotoframe.cache.CacheKey;
+import net.igorkromin.jphotoframe.cache.CacheManager;
+import net.igorkromin.jphotoframe.img.BackgroundFiller;
+import net.igorkromin.jphotoframe.img.Factory;
+import net.igorkromin.jphotoframe.img.ImageScaler;
+import net.igorkromin.jphotoframe.img.ImageUtil;
+import net.igorkromin.jphotoframe.img.MemoryGovernor;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders every photo in the image directories into the image cache ahead of time, so a new photo frame doesn't have
+ * to compose each photo the first time it is shown. Photos are rendered in parallel on a work stealing pool. Photos
+ * that already have a valid cached image are skipped.
+ */
+public class PreCacher {
+
+    private static final int PROGRESS_INTERVAL = 100;
+
+    // decoded images are subsampled to at most twice the screen size in each direction, plus the screen buffer
+    private static final int SCREEN_BUFFERS_PER_TASK = 5;
+
+    private ConfigOptions config;
+    private BufferedImage template;
+    private ImageSources imageSources;
+    private CacheManager cacheManager;
+
+    private ThreadLocal<Renderer> renderers;
+
+    private AtomicInteger rendered = new AtomicInteger();
+    private AtomicInteger skipped = new AtomicInteger();
+    private AtomicInteger failed = new AtomicInteger();
+    private AtomicLong bytesRead = new AtomicLong();
+
+    public PreCacher(final ConfigOptions config) {
+        this.config = config;
+
+        if (config.isDisableCaching()) {
+            throw new RuntimeException("Image caching is disabled, nothing to pre-cache");
+        }
+
+        // cached images are rendered at the size of the window the photo frame will be shown in, the full screen or
+        // a maximised window which leaves out the screen insets e.g. task bars
+        GraphicsDevice device = GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()[config.getGfxDeviceNum()];
+        GraphicsConfiguration gc = device.getDefaultConfiguration();
+        Rectangle bounds = gc.getBounds();
+        if (!config.isFullScreenWindow()) {
+            Insets insets = Toolkit.getDefaultToolkit().getScreenInsets(gc);
+            bounds.width -= insets.left + insets.right;
+            bounds.height -= insets.top + insets.bottom;
+        }
+        template = gc.createCompatibleImage(bounds.width, bounds.height);
+
+        renderers = new ThreadLocal<Renderer>() {
+            @Override
+            protected Renderer initialValue() {
+                return new Renderer();
+            }
+        };
+    }
+
+    /**
+     * Renders all photos in the image directories and logs the throughput once done.
+     */
+    public void start() {
+        Log.info("Running image pre-cache utility");
+
+        CacheKey cacheKey = new CacheKey(config, template.getWidth(), template.getHeight());
+
+        try {
+            imageSources = new ImageSources(config, cacheKey, new PauseListener() {
+                @Override
+                public void pauseEvent() {}
+
+                @Override
+                public void resumeEvent() {}
+            });
+        }
+        catch (Exception e) {
+            throw new RuntimeException("Could not read image directories: " + e.getMessage(), e);
+        }
+
+        // pre-cache all of the image directories, not just the ones that were listed first
+        imageSources.waitForSources();
+        imageSources.reconcileCatalog();
+
+        File cacheDir = imageSources.getCacheDirectory();
+        if (cacheDir == null) {
+            throw new RuntimeException("No valid cache directory specified");
+        }
+
+        long maxBytes = config.getCacheMaxSize() * 1024L * 1024L;
+        cacheManager = new CacheManager(cacheDir, maxBytes, config.getCacheMaxEntries());
+
+        List<File> files = imageSources.getImageFiles();
+        int threads = getThreadCount();
+
+        Log.info("Pre-caching " + files.size() + " images at " + template.getWidth() + "x" + template.getHeight() +
+                " using " + threads + " threads");
+
+        long startTime = System.currentTimeMillis();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RenderAction(files, 0, files.size()));
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        cacheManager.close();
+        imageSources.stopWatching();
+
+        double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+        double megabytes = bytesRead.get() / (1024.0 * 1024.0);
+
+        Log.info("Pre-cache finished in " + String.format("%.1f", seconds) + "s; rendered = " + rendered.get() +
+                "; skipped = " + skipped.get() + "; failed = " + failed.get());
+        Log.info("Throughput: " + String.format("%.2f", rendered.get() / seconds) + " images/s, " +
+                String.format("%.2f", megabytes / seconds) + " MB/s");
+    }
+
+    /**
+     * Works out how many photos can be rendered at once. This is limited by the number of cores and by how many
+     * photos fit into the decode memory budget at the same time.
+     * @return
+     */
+    private int getThreadCount() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long perTask = SCREEN_BUFFERS_PER_TASK *
+                MemoryGovernor.estimate(template.getWidth(), template.getHeight(), 0, 1);
+        long fit = MemoryGovernor.getBudget() / perTask;
+
+        return (int) Math.max(1, Math.min(cores, fit));
+    }
+
+    private void render(File f) {
+        File c = imageSources.getCachedImageFile(f);
+        if (c == null) {
+            failed.incrementAndGet();
+            return;
+        }
+
+        // the cache file name covers the source file and render settings, so an existing file is up to date
+        if (c.exists() && c.length() > 0) {
+            Log.verbose("Already cached: " + f.getAbsolutePath());
+            skipped.incrementAndGet();
+            return;
+        }
+
+        Renderer renderer = renderers.get();
+        BufferedImage image;
+        try {
+            image = ImageUtil.readImage(f, (config.isSubsampleImages()) ? renderer.scaler : null);
+        }
+        catch (Exception e) {
+            // load errors are logged by ImageUtil
+            failed.incrementAndGet();
+            imageSources.quarantineFile(f);
+            return;
+        }
+
+        renderer.filler.fillBackground(image, renderer.buffer);
+        renderer.scaler.drawScaledImage(image, renderer.buffer);
+
+        if (CacheFile.write(c, renderer.buffer)) {
+            cacheManager.stored(f, c);
+            bytesRead.addAndGet(f.length());
+
+            int count = rendered.incrementAndGet();
+            if (count % PROGRESS_INTERVAL == 0) {
+                Log.info("Rendered " + count + " images");
+            }
+        }
+        else {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Per thread filler, scaler and buffer. Fillers and scalers keep state between calls so they can't be shared
+     * between threads.
+     */
+    private class Renderer {
+        BackgroundFiller filler;
+        ImageScaler scaler;
+        BufferedImage buffer;
+
+        Renderer() {
+            filler = Factory.getFiller(config);
+            scaler = Factory.getScaler(config);
+
+            if (filler == null || scaler == null) {
+                throw new RuntimeException("Image scaler or background filler could not be created");
+            }
+
+            buffer = ImageUtil.createCompatibleImage(template);
+            filler.initialise(buffer, config);
+            scaler.initialise(buffer, config);
+        }
+    }
+
+    /**
+     * Renders a range of the image file list, splitting the range in half until it is small enough to render
+     * directly. Idle threads steal the other halves.
+     */
+    @SuppressWarnings("serial")
+    private class RenderAction extends RecursiveAction {
+        List<File> files;
+        int start;
+        int end;
+
+        RenderAction(List<File> files, int start, int end) {
+            this.files = files;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= 1) {
+                if (start < end) {
+                    render(files.get(start));
+                }
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new RenderAction(files, start, middle), new RenderAction(files, middle, end));
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Picks up directory changes from file system notifications, using a WatchService. Events are collected into batches
+ * and applied to the image directory in one go.
+ *
+ * Some file systems, network shares in particular, accept watch registrations but never send any events. Use probe()
+ * to check that events arrive before relying on this detector.
+ */
+public class WatchServiceDetector implements ChangeDetector {
+
+    private final static long EVENT_DEBOUNCE = 250;
+    private final static long MAX_BATCH_DELAY = 2000;
+    private final static String PROBE_FILE = ".jphotoframe-probe";
+
+    private ImageDirectory imageDirectory;
+    private WatchService dirWatcher;
+    private Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
+    public WatchServiceDetector(ImageDirectory imageDirectory)
+            throws IOException
+    {
+        this.imageDirectory = imageDirectory;
+        this.dirWatcher = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Checks whether file system notifications work for a directory by writing a probe file to it and waiting for the
+     * event. The probe file is deleted afterwards.
+     * @param dir
+     * @param window How long to wait for the event, in milliseconds
+     * @return false if no event arrived in time or the probe file could not be written
+     * @throws InterruptedException
+     */
+    public static boolean probe(File dir, long window)
+            throws InterruptedException
+    {
+        File probeFile = new File(dir, PROBE_FILE);
+
+        try (WatchService probeWatcher = FileSystems.getDefault().newWatchService()) {
+            dir.toPath().register(probeWatcher, ENTRY_CREATE, ENTRY_MODIFY);
+
+            try (FileOutputStream out = new FileOutputStream(probeFile)) {
+                out.write(0);
+            }
+
+            long deadline = System.currentTimeMillis() + window;
+            long remaining = window;
+
+            while (remaining > 0) {
+                WatchKey key = probeWatcher.poll(remaining, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    break;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (PROBE_FILE.equals(String.valueOf(event.context()))) {
+                        return true;
+                    }
+                }
+
+                key.reset();
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            return false;
+        }
+        catch (IOException e) {
+            Log.warning("Could not probe directory for change notifications: " + dir.getPath() + " cause: " +
+                    e.getMessage());
+            return false;
+        }
+        finally {
+            probeFile.delete();
+        }
+    }
+
+    @Override
+    public void watchDirectory(File dir) {
+        try {
+            Path path = dir.toPath();
+            watchedDirs.put(path.register(dirWatcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+        }
+        catch (IOException e) {
+            Log.warning("Could not watch directory: " + dir.getPath() + " cause: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void unwatchDirectory(File dir) {
+        Iterator<Map.Entry<WatchKey, Path>> it = watchedDirs.entrySet().iterator();
+
+        while (it.hasNext()) {
+            Map.Entry<WatchKey, Path> entry = it.next();
+
+            if (entry.getValue().toFile().equals(dir)) {
+                entry.getKey().cancel();
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public void detectChanges()
+            throws InterruptedException
+    {
+        // wake up regularly while files are pending so they are added once they are stable
+        WatchKey key = (imageDirectory.hasPendingFiles()) ?
+                dirWatcher.poll(ImageDirectory.STABLE_CHECK_INTERVAL, TimeUnit.MILLISECONDS) : dirWatcher.take();
+
+        if (key != null) {
+            collectEvents(key);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            dirWatcher.close();
+        }
+        catch (IOException e) {
+            // ignore the exception on close
+        }
+    }
+
+    /**
+     * Collects events until the directory has been quiet for the debounce time, or for at most the maximum batch
+     * delay, and applies them as one batch.
+     * @param key
+     * @throws InterruptedException
+     */
+    private void collectEvents(WatchKey key)
+            throws InterruptedException
+    {
+        Map<Path, WatchEvent.Kind<?>> events = new LinkedHashMap<>();
+        boolean overflow = false;
+        long batchStart = System.currentTimeMillis();
+
+        while (key != null) {
+            Path dir = watchedDirs.get(key);
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+
+                if (kind == OVERFLOW) {
+                    overflow = true;
+                }
+                else if (dir != null) {
+                    events.put(dir.resolve((Path) event.context()), kind);
+                }
+            }
+
+            // the key is no longer valid once its directory is gone
+            if (!key.reset()) {
+                watchedDirs.remove(key);
+            }
+
+            if (System.currentTimeMillis() - batchStart >= MAX_BATCH_DELAY) {
+                break;
+            }
+            key = dirWatcher.poll(EVENT_DEBOUNCE, TimeUnit.MILLISECONDS);
+        }
+
+        // events were lost, the only option is to re-list the directory
+        if (overflow) {
+            Log.warning("Directory events overflowed, synchronising");
+            imageDirectory.sync();
+        }
+        else {
+            imageDirectory.handleEvents(events);
+        }
+    }
+
+}
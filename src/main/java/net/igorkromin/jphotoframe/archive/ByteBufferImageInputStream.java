@@ -0,0 +1,88 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe.archive;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Image input stream over a byte buffer, such as a memory mapped slice of a file. Reads copy straight out of the
+ * buffer and seeking is free, there is no caching of the stream contents.
+ */
+public class ByteBufferImageInputStream extends ImageInputStreamImpl {
+
+    private ByteBuffer buffer;
+
+    public ByteBufferImageInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        checkClosed();
+        bitOffset = 0;
+
+        if (streamPos >= buffer.limit()) {
+            return -1;
+        }
+
+        return buffer.get((int) streamPos++) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        checkClosed();
+        bitOffset = 0;
+
+        if (len == 0) {
+            return 0;
+        }
+        else if (streamPos >= buffer.limit()) {
+            return -1;
+        }
+
+        int count = (int) Math.min(len, buffer.limit() - streamPos);
+        buffer.position((int) streamPos);
+        buffer.get(b, off, count);
+        streamPos += count;
+
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return buffer.limit();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        super.close();
+        buffer = null;
+    }
+
+}
@@ -0,0 +1,487 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe.archive;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Read-only access to the entries of a ZIP archive, without extracting them to disk.
+ *
+ * The central directory at the end of the archive is read once when the archive is opened, ZIP64 archives larger than
+ * 4GB are supported. Stored entries are read straight from a memory mapped slice of the archive, deflated entries are
+ * inflated from a mapped slice as they are read.
+ *
+ * Entries are addressed by a File whose path is the archive path, followed by '!' and the entry name, e.g.
+ * /photos/set.zip!/2015/IMG_0001.JPG. Open archives are registered so that these files can be resolved anywhere in
+ * the photo frame, see getEntry().
+ */
+public class ZipArchive {
+
+    public static final String ENTRY_SEPARATOR = "!";
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIZE = 20;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    private static final Map<String, ZipArchive> openArchives = new ConcurrentHashMap<>();
+
+    private File file;
+    private String entryPrefix;
+    private FileChannel channel;
+    private Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private ZipArchive(File file)
+            throws IOException
+    {
+        this.file = file;
+        this.entryPrefix = file.getPath() + ENTRY_SEPARATOR + File.separator;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            readCentralDirectory();
+        }
+        catch (IOException|RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an archive, reads its central directory and registers it so its entries can be resolved.
+     * @param file
+     * @return
+     * @throws IOException if the file can't be read or is not a ZIP archive
+     */
+    public static ZipArchive open(File file)
+            throws IOException
+    {
+        ZipArchive archive = new ZipArchive(file);
+        openArchives.put(archive.entryPrefix, archive);
+
+        return archive;
+    }
+
+    /**
+     * Looks up the archive entry that a file refers to.
+     * @param f
+     * @return null if the file is not an entry of an open archive
+     */
+    public static Entry getEntry(File f) {
+        if (f == null || openArchives.isEmpty()) {
+            return null;
+        }
+
+        String path = f.getPath();
+        if (!path.contains(ENTRY_SEPARATOR)) {
+            return null;
+        }
+
+        for (ZipArchive archive : openArchives.values()) {
+            if (path.startsWith(archive.entryPrefix)) {
+                String name = path.substring(archive.entryPrefix.length()).replace(File.separatorChar, '/');
+                return archive.entries.get(name);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Opens an image input stream for a file that refers to an archive entry.
+     * @param f
+     * @return
+     * @throws IOException if the file is not an entry of an open archive or can't be read
+     */
+    public static ImageInputStream openImageInputStream(File f)
+            throws IOException
+    {
+        Entry entry = getEntry(f);
+        if (entry == null) {
+            throw new IOException("Not an entry of an open archive: " + f.getPath());
+        }
+
+        return entry.archive.openImageInputStream(entry);
+    }
+
+    /**
+     * Closes the archive and unregisters it. Mapped slices still in use stay valid.
+     */
+    public void close() {
+        openArchives.remove(entryPrefix);
+
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            // ignore the exception on close
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Gets the file that refers to an entry of this archive.
+     * @param entry
+     * @return
+     */
+    public File getEntryFile(Entry entry) {
+        return new File(entryPrefix + entry.name.replace('/', File.separatorChar));
+    }
+
+    /**
+     * Opens an image input stream over an entry. Stored entries are read from a memory mapped slice of the archive,
+     * deflated entries are inflated as they are read and the inflated bytes kept in memory.
+     * @param entry
+     * @return
+     * @throws IOException
+     */
+    public ImageInputStream openImageInputStream(Entry entry)
+            throws IOException
+    {
+        long dataOffset = getDataOffset(entry);
+
+        if (entry.method == METHOD_STORED) {
+            return new ByteBufferImageInputStream(map(dataOffset, entry.size));
+        }
+        else if (entry.method == METHOD_DEFLATED) {
+            final Inflater inflater = new Inflater(true);
+            final InputStream in = new InflaterInputStream(
+                    new ByteBufferInputStream(map(dataOffset, entry.compressedSize)), inflater, INFLATE_BUFFER_SIZE)
+            {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+
+            return new MemoryCacheImageInputStream(in) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    in.close();
+                }
+            };
+        }
+
+        throw new IOException("Unsupported compression method " + entry.method + " for " + entry.name);
+    }
+
+    /**
+     * Finds the end of central directory record, and the ZIP64 one if there is one, and reads all entries from the
+     * central directory.
+     * @throws IOException
+     */
+    private void readCentralDirectory()
+            throws IOException
+    {
+        long fileSize = channel.size();
+        if (fileSize < EOCD_SIZE) {
+            throw new IOException("Not a ZIP archive: " + file.getPath());
+        }
+
+        // the end of central directory record is followed by a comment of up to 64KB
+        long tailStart = Math.max(0, fileSize - EOCD_SIZE - MAX_COMMENT_SIZE);
+        ByteBuffer tail = map(tailStart, fileSize - tailStart);
+
+        int eocd = -1;
+        for (int i = tail.limit() - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+
+        if (eocd < 0) {
+            throw new IOException("Not a ZIP archive: " + file.getPath());
+        }
+
+        long entryCount = tail.getShort(eocd + 10) & 0xffff;
+        long cenSize = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+        long cenOffset = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+
+        // archives with more than 65535 entries or over 4GB keep the real values in the ZIP64 record
+        int locator = eocd - ZIP64_EOCD_LOCATOR_SIZE;
+        if (locator >= 0 && tail.getInt(locator) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+            ByteBuffer zip64 = map(tail.getLong(locator + 8), 56);
+            if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                throw new IOException("Corrupt ZIP64 end of central directory: " + file.getPath());
+            }
+
+            entryCount = zip64.getLong(32);
+            cenSize = zip64.getLong(40);
+            cenOffset = zip64.getLong(48);
+        }
+
+        if (cenOffset + cenSize > fileSize || cenSize > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt ZIP central directory: " + file.getPath());
+        }
+
+        ByteBuffer cen = map(cenOffset, cenSize);
+        int pos = 0;
+
+        for (long i = 0; i < entryCount; i++) {
+            if (pos + CEN_HEADER_SIZE > cen.limit() || cen.getInt(pos) != CEN_SIGNATURE) {
+                throw new IOException("Corrupt ZIP central directory: " + file.getPath());
+            }
+
+            int flags = cen.getShort(pos + 8) & 0xffff;
+            int nameLength = cen.getShort(pos + 28) & 0xffff;
+            int extraLength = cen.getShort(pos + 30) & 0xffff;
+            int commentLength = cen.getShort(pos + 32) & 0xffff;
+
+            Entry entry = new Entry(this);
+            entry.method = cen.getShort(pos + 10) & 0xffff;
+            entry.crc = cen.getInt(pos + 16) & ZIP64_MAGIC;
+            entry.compressedSize = cen.getInt(pos + 20) & ZIP64_MAGIC;
+            entry.size = cen.getInt(pos + 24) & ZIP64_MAGIC;
+            entry.localHeaderOffset = cen.getInt(pos + 42) & ZIP64_MAGIC;
+            entry.encrypted = (flags & FLAG_ENCRYPTED) != 0;
+            entry.name = readString(cen, pos + CEN_HEADER_SIZE, nameLength, (flags & FLAG_UTF8) != 0);
+
+            readZip64Extra(cen, pos + CEN_HEADER_SIZE + nameLength, extraLength, entry);
+
+            entries.put(entry.name, entry);
+            pos += CEN_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * Reads sizes and offsets that did not fit in 32 bits from the ZIP64 extra field. Only the values that are set to
+     * 0xffffffff in the header are in the extra field, in a fixed order.
+     */
+    private static void readZip64Extra(ByteBuffer cen, int start, int length, Entry entry) {
+        int pos = start;
+        int end = start + length;
+
+        while (pos + 4 <= end) {
+            int id = cen.getShort(pos) & 0xffff;
+            int size = cen.getShort(pos + 2) & 0xffff;
+            int data = pos + 4;
+
+            if (id == ZIP64_EXTRA_ID) {
+                if (entry.size == ZIP64_MAGIC && data + 8 <= end) {
+                    entry.size = cen.getLong(data);
+                    data += 8;
+                }
+                if (entry.compressedSize == ZIP64_MAGIC && data + 8 <= end) {
+                    entry.compressedSize = cen.getLong(data);
+                    data += 8;
+                }
+                if (entry.localHeaderOffset == ZIP64_MAGIC && data + 8 <= end) {
+                    entry.localHeaderOffset = cen.getLong(data);
+                }
+                return;
+            }
+
+            pos = data + size;
+        }
+    }
+
+    /**
+     * Works out where the data of an entry starts from its local header. The local header can have a different extra
+     * field to the central directory, so it has to be read.
+     * @param entry
+     * @return
+     * @throws IOException
+     */
+    private long getDataOffset(Entry entry)
+            throws IOException
+    {
+        if (entry.dataOffset >= 0) {
+            return entry.dataOffset;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(LOC_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long pos = entry.localHeaderOffset;
+
+        while (header.hasRemaining()) {
+            if (channel.read(header, pos + header.position()) < 0) {
+                throw new IOException("Unexpected end of ZIP archive: " + file.getPath());
+            }
+        }
+
+        if (header.getInt(0) != LOC_SIGNATURE) {
+            throw new IOException("Corrupt ZIP local header for " + entry.name);
+        }
+
+        int nameLength = header.getShort(26) & 0xffff;
+        int extraLength = header.getShort(28) & 0xffff;
+        entry.dataOffset = entry.localHeaderOffset + LOC_HEADER_SIZE + nameLength + extraLength;
+
+        return entry.dataOffset;
+    }
+
+    private ByteBuffer map(long offset, long length)
+            throws IOException
+    {
+        if (length > Integer.MAX_VALUE || offset + length > channel.size()) {
+            throw new IOException("ZIP entry out of range in " + file.getPath());
+        }
+
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String readString(ByteBuffer buffer, int start, int length, boolean utf8) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+
+        return new String(bytes, (utf8) ? StandardCharsets.UTF_8 : getLegacyCharset());
+    }
+
+    /**
+     * Names of entries without the UTF-8 flag are in the IBM PC code page, which is not available on every JRE.
+     * @return
+     */
+    private static Charset getLegacyCharset() {
+        try {
+            return Charset.forName("IBM437");
+        }
+        catch (Exception e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    /**
+     * An entry in the central directory of an archive.
+     */
+    public static class Entry {
+        ZipArchive archive;
+        String name;
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+        volatile long dataOffset = -1;
+        boolean encrypted;
+
+        Entry(ZipArchive archive) {
+            this.archive = archive;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public boolean isEncrypted() {
+            return encrypted;
+        }
+    }
+
+    /**
+     * Reads a byte buffer as an input stream.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return (buffer.hasRemaining()) ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            else if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+}
@@ -0,0 +1,338 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe.cache;
+
+import net.igorkromin.jphotoframe.Log;
+import net.igorkromin.jphotoframe.img.ImageUtil;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import javax.imageio.ImageWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes rendered images in the image cache. Two formats are supported, picked by the cache file
+ * extension:
+ *
+ * JPEG - compact but every cache hit needs a full JPEG decode.
+ *
+ * Raw - a small header followed by the pixel data in the same layout as the frame buffers. Raw files are memory
+ * mapped when read and copied straight into the target raster so a cache hit costs a memory copy instead of a decode.
+ * They are written a row at a time and forced to disk before being moved into place. The files
+ * are only valid for buffers with the same size and pixel layout, a mismatch is treated as a cache miss.
+ */
+public class CacheFile {
+
+    public static final String FORMAT_JPEG = "jpeg";
+    public static final String FORMAT_RAW = "raw";
+
+    public static final String JPEG_FILE_EXTENSION = ".jpg";
+    public static final String RAW_FILE_EXTENSION = ".raw";
+    public static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    private static final int RAW_MAGIC = 0x4A504652; // JPFR
+    private static final int RAW_VERSION = 1;
+    private static final int RAW_HEADER_SIZE = 32;
+
+    /**
+     * Gets the cache file extension for a cache format.
+     * @param format
+     * @return
+     */
+    public static String getExtension(String format) {
+        return (FORMAT_RAW.equals(format)) ? RAW_FILE_EXTENSION : JPEG_FILE_EXTENSION;
+    }
+
+    /**
+     * Checks if a file name has one of the cache file extensions.
+     * @param fileName
+     * @return
+     */
+    public static boolean isCacheFile(String fileName) {
+        return fileName.endsWith(JPEG_FILE_EXTENSION) || fileName.endsWith(RAW_FILE_EXTENSION);
+    }
+
+    /**
+     * Reads a cache file into the target buffer. All exceptions are caught and logged.
+     * @param cacheFile
+     * @param target Buffer to copy the cached image into
+     * @return true if the cached image was read, false if the cache file can't be used
+     */
+    public static boolean read(File cacheFile, BufferedImage target) {
+        if (cacheFile.getName().endsWith(RAW_FILE_EXTENSION)) {
+            return readRaw(cacheFile, target);
+        }
+
+        BufferedImage cachedImage;
+        try {
+            cachedImage = ImageUtil.readImage(cacheFile);
+        }
+        catch (Exception e) {
+            // load errors are logged by ImageUtil
+            return false;
+        }
+
+        // cached images are not rescaled, just copied to the buffer
+        Graphics2D g = target.createGraphics();
+        g.drawImage(cachedImage, 0, 0, null);
+        g.dispose();
+
+        return true;
+    }
+
+    /**
+     * Writes an image to a cache file in the format given by the file extension. All exceptions are caught and
+     * logged but not rethrown.
+     * @param cacheFile
+     * @param image
+     * @return true if the cache file was written
+     */
+    public static boolean write(File cacheFile, BufferedImage image) {
+        return write(cacheFile, image, null);
+    }
+
+    /**
+     * Writes an image to a cache file in the format given by the file extension. The image is written to a temporary
+     * file first, which is then moved over the cache file, so a partly written cache file is never seen under its
+     * final name. All exceptions are caught and logged but not rethrown.
+     * @param cacheFile
+     * @param image
+     * @param jpegWriter Writer to reuse for JPEG files, null to create a new writer
+     * @return true if the cache file was written
+     */
+    public static boolean write(File cacheFile, BufferedImage image, ImageWriter jpegWriter) {
+        File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + TEMP_FILE_EXTENSION);
+        boolean written;
+
+        if (cacheFile.getName().endsWith(RAW_FILE_EXTENSION)) {
+            written = writeRaw(tempFile, image);
+        }
+        else if (jpegWriter != null) {
+            written = ImageUtil.writeImage(jpegWriter, tempFile, image);
+        }
+        else {
+            written = ImageUtil.writeImage(tempFile, image);
+        }
+
+        try {
+            if (written) {
+                Files.move(tempFile.toPath(), cacheFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            }
+        }
+        catch (IOException e) {
+            Log.error("Could not move cache file into place: " + cacheFile.getAbsolutePath(), e);
+        }
+
+        if (tempFile.exists() && !tempFile.delete()) {
+            Log.warning("Could not delete temporary cache file: " + tempFile.getAbsolutePath());
+        }
+        return false;
+    }
+
+    private static boolean readRaw(File cacheFile, BufferedImage target) {
+        WritableRaster raster = target.getRaster();
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+
+            if (!checkHeader(buffer, target)) {
+                Log.verbose("Raw cache file does not match the frame buffer: " + cacheFile.getAbsolutePath());
+                return false;
+            }
+
+            if (buffer.remaining() != getDataSize(raster)) {
+                Log.warning("Raw cache file is truncated: " + cacheFile.getAbsolutePath());
+                return false;
+            }
+
+            // copy a row at a time through the raster so the buffer stays managed by Java2D
+            int width = raster.getWidth();
+            int rowLength = width * raster.getNumDataElements();
+
+            switch (raster.getTransferType()) {
+                case DataBuffer.TYPE_INT: {
+                    int[] row = new int[rowLength];
+                    for (int y = 0; y < raster.getHeight(); y++) {
+                        buffer.asIntBuffer().get(row);
+                        buffer.position(buffer.position() + rowLength * 4);
+                        raster.setDataElements(0, y, width, 1, row);
+                    }
+                    break;
+                }
+                case DataBuffer.TYPE_USHORT: {
+                    short[] row = new short[rowLength];
+                    for (int y = 0; y < raster.getHeight(); y++) {
+                        buffer.asShortBuffer().get(row);
+                        buffer.position(buffer.position() + rowLength * 2);
+                        raster.setDataElements(0, y, width, 1, row);
+                    }
+                    break;
+                }
+                default: {
+                    byte[] row = new byte[rowLength];
+                    for (int y = 0; y < raster.getHeight(); y++) {
+                        buffer.get(row);
+                        raster.setDataElements(0, y, width, 1, row);
+                    }
+                    break;
+                }
+            }
+
+            return true;
+        }
+        catch (IOException e) {
+            Log.error("Could not read raw cache file: " + cacheFile.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    private static boolean writeRaw(File cacheFile, BufferedImage image) {
+        Log.verbose("Writing raw image: " + cacheFile.getAbsolutePath());
+
+        Raster raster = image.getRaster();
+        if (getElementSize(raster.getTransferType()) == 0) {
+            Log.warning("Frame buffer pixel layout is not supported by the raw cache format");
+            return false;
+        }
+
+        int width = raster.getWidth();
+        int rowSize = width * raster.getNumDataElements() * getElementSize(raster.getTransferType());
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(rowSize, RAW_HEADER_SIZE));
+            buffer.order(ByteOrder.nativeOrder());
+
+            buffer.putInt(RAW_MAGIC);
+            buffer.putInt(RAW_VERSION);
+            buffer.putInt(image.getWidth());
+            buffer.putInt(image.getHeight());
+            buffer.putInt(image.getType());
+            buffer.putInt(raster.getTransferType());
+            buffer.putInt(raster.getNumDataElements());
+            buffer.putInt(image.getColorModel().getPixelSize());
+            writeBuffer(channel, buffer);
+
+            Object row = null;
+
+            for (int y = 0; y < raster.getHeight(); y++) {
+                row = raster.getDataElements(0, y, width, 1, row);
+
+                switch (raster.getTransferType()) {
+                    case DataBuffer.TYPE_INT:
+                        int[] ints = (int[]) row;
+                        buffer.asIntBuffer().put(ints);
+                        buffer.position(buffer.position() + ints.length * 4);
+                        break;
+                    case DataBuffer.TYPE_USHORT:
+                        short[] shorts = (short[]) row;
+                        buffer.asShortBuffer().put(shorts);
+                        buffer.position(buffer.position() + shorts.length * 2);
+                        break;
+                    default:
+                        buffer.put((byte[]) row);
+                        break;
+                }
+
+                writeBuffer(channel, buffer);
+            }
+
+            // the file is about to be moved over the cache file, make sure the data is on disk first
+            channel.force(true);
+
+            return true;
+        }
+        catch (IOException e) {
+            Log.error("Failed to cache image: " + cacheFile.getAbsolutePath() + " cause: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes out everything put into the buffer so far and clears it.
+     * @param channel
+     * @param buffer
+     * @throws IOException
+     */
+    private static void writeBuffer(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static boolean checkHeader(ByteBuffer buffer, BufferedImage target) {
+        if (buffer.remaining() < RAW_HEADER_SIZE) {
+            return false;
+        }
+
+        Raster raster = target.getRaster();
+
+        return buffer.getInt() == RAW_MAGIC &&
+                buffer.getInt() == RAW_VERSION &&
+                buffer.getInt() == target.getWidth() &&
+                buffer.getInt() == target.getHeight() &&
+                buffer.getInt() == target.getType() &&
+                buffer.getInt() == raster.getTransferType() &&
+                buffer.getInt() == raster.getNumDataElements() &&
+                buffer.getInt() == target.getColorModel().getPixelSize();
+    }
+
+    private static long getDataSize(Raster raster) {
+        return (long) raster.getWidth() * raster.getHeight() * raster.getNumDataElements() *
+                getElementSize(raster.getTransferType());
+    }
+
+    /**
+     * Gets the size in bytes of a raster data element.
+     * @param transferType
+     * @return 0 if the element type is not supported
+     */
+    private static int getElementSize(int transferType) {
+        switch (transferType) {
+            case DataBuffer.TYPE_INT:
+                return 4;
+            case DataBuffer.TYPE_USHORT:
+                return 2;
+            case DataBuffer.TYPE_BYTE:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+}
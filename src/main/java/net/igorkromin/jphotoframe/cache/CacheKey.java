@@ -0,0 +1,116 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+package net.igorkromin.jphotoframe.cache;
+
+import net.igorkromin.jphotoframe.ConfigOptions;
+import net.igorkromin.jphotoframe.archive.ZipArchive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Generates cache keys for rendered images. A key is a SHA-1 digest of the source file path, size and modification
+ * time plus all of the parameters that affect how the image is rendered i.e. buffer dimensions, scaler, filler and
+ * the filler settings and the cache file format.
+ *
+ * Editing a photo changes its size or modification time and so its key, which means stale renders are never matched.
+ * Working out a key costs a single stat of the source file. Photos in ZIP archives use the CRC and size of the archive
+ * entry instead, so the key stays the same when the archive is replaced by one with the same photo.
+ */
+public class CacheKey {
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private String renderSignature;
+    private String fileExtension;
+
+    public CacheKey(ConfigOptions config, int width, int height) {
+        renderSignature = width + "x" + height +
+                "|" + config.getImgScaler() +
+                "|" + config.getBackgroundFiller() +
+                "|" + config.getBackgroundPercent() +
+                "|" + config.getBackgroundOpacity() +
+                "|" + config.isSubsampleImages() +
+                "|" + config.getCacheFormat();
+
+        fileExtension = CacheFile.getExtension(config.getCacheFormat());
+    }
+
+    /**
+     * Gets the cache key for an image file.
+     * @param imageFile
+     * @return null if the file can't be read
+     */
+    public String getKey(File imageFile) {
+        if (imageFile == null) {
+            return null;
+        }
+
+        ZipArchive.Entry entry = ZipArchive.getEntry(imageFile);
+        if (entry != null) {
+            return digest(imageFile.getAbsolutePath() + "|" + entry.getSize() + "|crc=" + entry.getCrc() + "|" +
+                    renderSignature);
+        }
+
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(imageFile.toPath(), BasicFileAttributes.class);
+
+            return digest(imageFile.getAbsolutePath() + "|" + attrs.size() + "|" +
+                    attrs.lastModifiedTime().toMillis() + "|" + renderSignature);
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the name of the cache file for a cache key.
+     * @param key
+     * @return
+     */
+    public String getFileName(String key) {
+        return key + fileExtension;
+    }
+
+    private static String digest(String value) {
+        try {
+            MessageDigest md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            byte[] hash = md.digest(value.getBytes(StandardCharsets.UTF_8));
+
+            char[] chars = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                chars[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+                chars[i * 2 + 1] = HEX[hash[i] & 0xf];
+            }
+
+            return new String(chars);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+}
@@ -0,0 +1,470 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+package net.igorkromin.jphotoframe.cache;
+
+import net.igorkromin.jphotoframe.ImageFileListener;
+import net.igorkromin.jphotoframe.Log;
+import net.igorkromin.jphotoframe.archive.ZipArchive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the files in the render cache directory and limits the cache size.
+ *
+ * Each cache entry records its size, the source image it was rendered from and when it was last used. Entries are
+ * kept in least recently used order and evicted once the cache grows past the configured byte or entry limit. Entries
+ * are also removed when their source image is deleted or replaced by a newer render of the same source.
+ *
+ * The entries are saved to a compact binary index file in the cache directory so they can be loaded quickly on
+ * startup without checking each cache file. The index is only saved every so often, so a marker file is kept in the
+ * cache directory while the cache is in use and removed once the index is saved on close(). If the marker is still
+ * there on startup the cache was not closed cleanly, so the names in the cache directory are compared with the index
+ * to pick up cache files the index doesn't know about and to drop entries whose files are gone, which keeps those
+ * files under the cache limits.
+ */
+public class CacheManager implements ImageFileListener {
+
+    private static final String INDEX_FILE = "cache.idx";
+    private static final String INDEX_TEMP_FILE = "cache.idx.tmp";
+    private static final String INDEX_DIRTY_FILE = "cache.idx.dirty";
+    private static final int INDEX_MAGIC = 0x4A504643; // JPFC
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_BUFFER_SIZE = 64 * 1024;
+    private static final int SAVE_INTERVAL = 50;
+
+    private static final String LEGACY_FILE_PATTERN = "X-?[0-9]+";
+
+    private File cacheDir;
+    private long maxBytes;
+    private int maxEntries;
+
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private HashMap<String, String> entryBySource = new HashMap<>();
+    private long totalBytes = 0;
+    private int changes = 0;
+
+    /**
+     * Creates the cache manager and loads the cache index. If there is no index, one is built from the files in the
+     * cache directory.
+     * @param cacheDir
+     * @param maxBytes Maximum total size of cached files, 0 for no limit
+     * @param maxEntries Maximum number of cached files, 0 for no limit
+     */
+    public CacheManager(File cacheDir, long maxBytes, int maxEntries) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+
+        File indexFile = new File(cacheDir, INDEX_FILE);
+        File dirtyFile = new File(cacheDir, INDEX_DIRTY_FILE);
+
+        if (indexFile.exists() && loadIndex(indexFile)) {
+            if (dirtyFile.exists()) {
+                Log.info("Cache was not closed cleanly, checking the cache index");
+                reconcileIndex();
+            }
+        }
+        else {
+            rebuildIndex();
+        }
+
+        evict();
+
+        // cache files may be written from now on that are not in the saved index until close()
+        try {
+            dirtyFile.createNewFile();
+        }
+        catch (IOException e) {
+            Log.warning("Could not create cache index marker: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records that a cache file was used.
+     * @param cacheFile
+     */
+    public synchronized void touch(File cacheFile) {
+        Entry entry = entries.get(cacheFile.getName());
+
+        if (entry != null) {
+            entry.lastAccess = System.currentTimeMillis();
+            changed();
+        }
+    }
+
+    /**
+     * Records a newly written cache file, evicting other entries if the cache is over its limits. Any older entry for
+     * the same source image is removed.
+     * @param imageFile Source image the cache file was rendered from
+     * @param cacheFile
+     */
+    public synchronized void stored(File imageFile, File cacheFile) {
+        String source = imageFile.getAbsolutePath();
+        String previous = entryBySource.get(source);
+
+        if (previous != null && !previous.equals(cacheFile.getName())) {
+            Log.verbose("Removing stale cache entry for: " + source);
+            remove(previous, true);
+        }
+
+        Entry entry = new Entry(cacheFile.getName(), source, cacheFile.length(), System.currentTimeMillis());
+        add(entry);
+
+        evict();
+        changed();
+    }
+
+    /**
+     * Removes entries rendered from an image directory whose source images are not in the given list, used to clean up
+     * after images were deleted while the photo frame was not running. Entries from other image directories are left
+     * alone, so a directory that is not available at the moment keeps its cache. Nothing is removed if the list is
+     * empty, in case the directory is just an empty mount point.
+     * @param root Image directory or archive the list was read from
+     * @param imageFiles
+     */
+    public synchronized void retainSources(File root, Collection<File> imageFiles) {
+        if (imageFiles.isEmpty()) {
+            return;
+        }
+
+        String rootPath = root.getAbsolutePath();
+        Set<String> sources = new HashSet<>();
+        for (File f : imageFiles) {
+            sources.add(f.getAbsolutePath());
+        }
+
+        int removed = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+
+            // entries rebuilt without an index don't know their source and are left to be evicted
+            if (isUnder(entry.source, rootPath) && !sources.contains(entry.source)) {
+                it.remove();
+                entryBySource.remove(entry.source);
+                totalBytes -= entry.size;
+                deleteFile(entry.name);
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            Log.info("Removed " + removed + " orphaned cache entries for " + rootPath);
+            changed();
+        }
+    }
+
+    /**
+     * Checks whether a source path is inside an image directory, or is an entry of an archive.
+     * @param source
+     * @param rootPath
+     * @return
+     */
+    private static boolean isUnder(String source, String rootPath) {
+        if (source.length() <= rootPath.length() || !source.startsWith(rootPath)) {
+            return false;
+        }
+
+        char c = source.charAt(rootPath.length());
+        return c == File.separatorChar || source.startsWith(ZipArchive.ENTRY_SEPARATOR, rootPath.length());
+    }
+
+    @Override
+    public void imageSourceLoaded(File root, List<File> imageFiles) {
+        retainSources(root, imageFiles);
+    }
+
+    @Override
+    public synchronized void imageFileRemoved(File imageFile) {
+        String name = entryBySource.get(imageFile.getAbsolutePath());
+
+        if (name != null) {
+            Log.verbose("Removing cache entry for deleted image: " + imageFile.getAbsolutePath());
+            remove(name, true);
+            changed();
+        }
+    }
+
+    /**
+     * Saves the cache index and marks the cache as closed cleanly, so the cache directory doesn't need checking on the
+     * next startup. Must be called after the last cache file has been written.
+     */
+    public synchronized void close() {
+        if (save()) {
+            File dirtyFile = new File(cacheDir, INDEX_DIRTY_FILE);
+
+            if (dirtyFile.exists() && !dirtyFile.delete()) {
+                Log.warning("Could not delete cache index marker: " + dirtyFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Writes the cache index to disk. The index is written to a temporary file first and then moved over the
+     * existing index so a crash can't leave a partly written index behind.
+     * @return true if the index was written
+     */
+    public synchronized boolean save() {
+        File tempFile = new File(cacheDir, INDEX_TEMP_FILE);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile), INDEX_BUFFER_SIZE)))
+        {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(entries.size());
+
+            // written from least to most recently used so that loading restores the same order
+            for (Entry entry : entries.values()) {
+                out.writeUTF(entry.name);
+                out.writeUTF(entry.source);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastAccess);
+            }
+        }
+        catch (IOException e) {
+            Log.error("Could not write cache index", e);
+            return false;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), new File(cacheDir, INDEX_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changes = 0;
+            return true;
+        }
+        catch (IOException e) {
+            Log.error("Could not replace cache index", e);
+            return false;
+        }
+    }
+
+    /**
+     * Loads the index, rebuilding it from the cache directory if it can't be read.
+     * @param indexFile
+     * @return true if the index was loaded, false if it had to be rebuilt
+     */
+    private boolean loadIndex(File indexFile) {
+        long startTime = System.currentTimeMillis();
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile), INDEX_BUFFER_SIZE)))
+        {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                throw new IOException("Unrecognised cache index format");
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                add(new Entry(in.readUTF(), in.readUTF(), in.readLong(), in.readLong()));
+            }
+
+            Log.info("Loaded cache index with " + entries.size() + " entries in " +
+                    (System.currentTimeMillis() - startTime) + "ms");
+            return true;
+        }
+        catch (IOException e) {
+            Log.warning("Could not load cache index, rebuilding: " + e.getMessage());
+            entries.clear();
+            entryBySource.clear();
+            totalBytes = 0;
+
+            rebuildIndex();
+            return false;
+        }
+    }
+
+    /**
+     * Brings a loaded index in line with the cache directory. Cache files written after the index was last saved, e.g.
+     * before a crash, are added so they can be evicted. They don't record their source image. Entries whose file is
+     * missing are dropped. Only the names are compared, files already in the index are not checked.
+     */
+    private void reconcileIndex() {
+        String[] files = cacheDir.list();
+        if (files == null) {
+            return;
+        }
+
+        Set<String> names = new HashSet<>();
+        int added = 0;
+
+        for (String name : files) {
+            if (CacheFile.isCacheFile(name)) {
+                names.add(name);
+
+                if (!entries.containsKey(name)) {
+                    File f = new File(cacheDir, name);
+                    add(new Entry(name, "", f.length(), f.lastModified()));
+                    added++;
+                }
+            }
+        }
+
+        int removed = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+
+            if (!names.contains(entry.name)) {
+                it.remove();
+                if (entry.name.equals(entryBySource.get(entry.source))) {
+                    entryBySource.remove(entry.source);
+                }
+                totalBytes -= entry.size;
+                removed++;
+            }
+        }
+
+        if (added > 0 || removed > 0) {
+            Log.info("Cache index was out of date; added = " + added + "; removed = " + removed);
+            changed();
+        }
+    }
+
+    /**
+     * Builds the index from the files in the cache directory. Files from before the index existed don't record their
+     * source image, so they are ordered by modification time and will be evicted first.
+     */
+    private void rebuildIndex() {
+        Log.info("Building cache index");
+
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File f : files) {
+            String name = f.getName();
+
+            if (name.matches(LEGACY_FILE_PATTERN)) {
+                // cache files named by the old scheme can't be matched to their source any more
+                deleteFile(name);
+            }
+            else if (f.isFile() && CacheFile.isCacheFile(name)) {
+                add(new Entry(name, "", f.length(), f.lastModified()));
+            }
+        }
+
+        changed();
+    }
+
+    private void add(Entry entry) {
+        Entry previous = entries.put(entry.name, entry);
+        if (previous != null) {
+            totalBytes -= previous.size;
+        }
+
+        if (!entry.source.isEmpty()) {
+            entryBySource.put(entry.source, entry.name);
+        }
+        totalBytes += entry.size;
+    }
+
+    private void remove(String name, boolean deleteFile) {
+        Entry entry = entries.remove(name);
+
+        if (entry != null) {
+            if (name.equals(entryBySource.get(entry.source))) {
+                entryBySource.remove(entry.source);
+            }
+            totalBytes -= entry.size;
+        }
+
+        if (deleteFile) {
+            deleteFile(name);
+        }
+    }
+
+    /**
+     * Removes least recently used entries until the cache is within its limits.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+
+        while (it.hasNext() && isOverLimit()) {
+            Entry entry = it.next().getValue();
+            it.remove();
+
+            if (entry.name.equals(entryBySource.get(entry.source))) {
+                entryBySource.remove(entry.source);
+            }
+            totalBytes -= entry.size;
+
+            Log.verbose("Evicting cache entry: " + entry.name);
+            deleteFile(entry.name);
+            changes++;
+        }
+    }
+
+    private boolean isOverLimit() {
+        return (maxBytes > 0 && totalBytes > maxBytes) || (maxEntries > 0 && entries.size() > maxEntries);
+    }
+
+    private void deleteFile(String name) {
+        File f = new File(cacheDir, name);
+
+        if (f.exists() && !f.delete()) {
+            Log.warning("Could not delete cache file: " + f.getAbsolutePath());
+        }
+    }
+
+    private void changed() {
+        changes++;
+
+        if (changes >= SAVE_INTERVAL) {
+            save();
+        }
+    }
+
+    /**
+     * Cache index entry.
+     */
+    private static class Entry {
+        String name;
+        String source;
+        long size;
+        long lastAccess;
+
+        Entry(String name, String source, long size, long lastAccess) {
+            this.name = name;
+            this.source = source;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+}
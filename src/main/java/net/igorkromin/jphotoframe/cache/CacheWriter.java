@@ -0,0 +1,206 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe.cache;
+
+import net.igorkromin.jphotoframe.Log;
+import net.igorkromin.jphotoframe.img.ImageUtil;
+
+import javax.imageio.ImageWriter;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes rendered images to the image cache in the background so that encoding never holds up the photo thread.
+ *
+ * Submitted frames are copied into a small pool of scratch buffers, which frees the frame buffer straight away and
+ * limits how many writes can be waiting. If all scratch buffers are in use the write is dropped, the photo will just
+ * be rendered again the next time it is shown. A single JPEG writer is reused for all writes.
+ */
+public class CacheWriter extends Thread {
+
+    private static final long POLL_TIMEOUT = 500;
+    private static final long STOP_TIMEOUT = 5000;
+
+    private CacheManager cacheManager;
+    private File cacheDir;
+    private BufferedImage template;
+    private BlockingQueue<Job> jobs;
+    private BlockingQueue<BufferedImage> scratchBuffers;
+    private int scratchCount = 0;
+    private int backlog;
+    private volatile boolean running = true;
+
+    /**
+     * @param cacheManager Cache manager to record written cache files with, may be null
+     * @param cacheDir
+     * @param template Image to base the scratch buffers on
+     * @param backlog Maximum number of writes that can be waiting
+     */
+    public CacheWriter(CacheManager cacheManager, File cacheDir, BufferedImage template, int backlog) {
+        this.cacheManager = cacheManager;
+        this.cacheDir = cacheDir;
+        this.template = template;
+        this.backlog = backlog;
+
+        jobs = new ArrayBlockingQueue<>(backlog);
+        scratchBuffers = new ArrayBlockingQueue<>(backlog);
+
+        setName("CacheWriter");
+        setDaemon(true);
+    }
+
+    /**
+     * Queues a frame to be written to the cache. The frame is copied before this method returns so the caller is
+     * free to reuse it.
+     * @param imageFile Source image the frame was rendered from
+     * @param cacheFile
+     * @param frame
+     * @return false if the write was dropped because the backlog is full
+     */
+    public boolean submit(File imageFile, File cacheFile, BufferedImage frame) {
+        if (!running) {
+            return false;
+        }
+
+        BufferedImage scratch = getScratchBuffer();
+        if (scratch == null) {
+            Log.verbose("Cache write backlog is full, not caching: " + imageFile.getAbsolutePath());
+            return false;
+        }
+
+        Graphics2D g = scratch.createGraphics();
+        g.drawImage(frame, 0, 0, null);
+        g.dispose();
+
+        // there is a scratch buffer for each queue slot so this won't fail
+        jobs.offer(new Job(imageFile, cacheFile, scratch));
+        return true;
+    }
+
+    /**
+     * Stops the writer once the write in progress is done. Writes still queued are dropped.
+     */
+    public void stopWriting() {
+        running = false;
+
+        try {
+            join(STOP_TIMEOUT);
+        }
+        catch (InterruptedException e) {
+            // stopping anyway
+        }
+    }
+
+    @Override
+    public void run() {
+        Log.verbose("Starting cache writer thread");
+
+        deleteTempFiles();
+
+        ImageWriter writer = ImageUtil.createJpegWriter();
+        try {
+            while (running) {
+                Job job = jobs.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+
+                if (job != null) {
+                    try {
+                        write(writer, job);
+                    }
+                    finally {
+                        scratchBuffers.offer(job.frame);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // stopping
+        }
+        finally {
+            writer.dispose();
+        }
+
+        Log.verbose("Exiting cache writer thread");
+    }
+
+    private void write(ImageWriter writer, Job job) {
+        if (CacheFile.write(job.cacheFile, job.frame, writer) && cacheManager != null) {
+            cacheManager.stored(job.imageFile, job.cacheFile);
+        }
+    }
+
+    /**
+     * Gets a free scratch buffer, creating one if fewer than the backlog have been created so far.
+     * @return null if all scratch buffers are in use
+     */
+    private synchronized BufferedImage getScratchBuffer() {
+        BufferedImage scratch = scratchBuffers.poll();
+
+        if (scratch == null && scratchCount < backlog) {
+            scratch = ImageUtil.createCompatibleImage(template);
+            scratchCount++;
+        }
+
+        return scratch;
+    }
+
+    /**
+     * Removes temporary files left behind by writes that were cut short. Only temporary cache image files are matched,
+     * the cache index and photo catalog write their own temporary files to the same directory.
+     */
+    private void deleteTempFiles() {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir.toPath(),
+                "*{" + CacheFile.JPEG_FILE_EXTENSION + "," + CacheFile.RAW_FILE_EXTENSION + "}" +
+                        CacheFile.TEMP_FILE_EXTENSION))
+        {
+            for (Path p : stream) {
+                Log.verbose("Deleting temporary cache file: " + p);
+                Files.deleteIfExists(p);
+            }
+        }
+        catch (IOException e) {
+            Log.warning("Could not clean up temporary cache files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queued cache write.
+     */
+    private static class Job {
+        File imageFile;
+        File cacheFile;
+        BufferedImage frame;
+
+        Job(File imageFile, File cacheFile, BufferedImage frame) {
+            this.imageFile = imageFile;
+            this.cacheFile = cacheFile;
+            this.frame = frame;
+        }
+    }
+
+}
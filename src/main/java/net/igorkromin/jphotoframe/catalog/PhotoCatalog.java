@@ -0,0 +1,625 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe.catalog;
+
+import mediautil.image.jpeg.AbstractImageInfo;
+import mediautil.image.jpeg.Entry;
+import mediautil.image.jpeg.Exif;
+import mediautil.image.jpeg.LLJTran;
+import net.igorkromin.jphotoframe.Log;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent catalog of the photos in the image directory, kept in a binary file in the cache directory.
+ *
+ * For each photo the catalog records the path, size and modification time, plus the pixel dimensions, EXIF
+ * orientation and capture date once the photo has been scanned. Modification times of the listed directories are
+ * recorded too, so on startup only the directories whose modification time has changed need to be listed again.
+ *
+ * Photos are scanned for metadata by a low priority background thread. Other parts of the photo frame can look up
+ * photo metadata here without touching the photo files.
+ *
+ * Files that are not images or that could not be decoded are kept in a quarantine along with their size and
+ * modification time, so they are not checked again until they change.
+ */
+public class PhotoCatalog {
+
+    private static final String CATALOG_FILE = "catalog.idx";
+    private static final String CATALOG_TEMP_FILE = "catalog.idx.tmp";
+    private static final int CATALOG_MAGIC = 0x4A505043; // JPPC
+    private static final int CATALOG_VERSION = 2;
+    private static final int CATALOG_BUFFER_SIZE = 64 * 1024;
+    private static final int SCAN_BATCH_SIZE = 500;
+    private static final long SCAN_SAVE_INTERVAL = 60000;
+    private static final long SCAN_IDLE_WAIT = 60000;
+
+    public static final int QUARANTINE_NOT_IMAGE = 1;
+    public static final int QUARANTINE_DECODE_FAILED = 2;
+
+    private File cacheDir;
+    private HashMap<String, PhotoInfo> photos = new HashMap<>();
+    private HashMap<String, Long> directories = new HashMap<>();
+    private HashMap<String, QuarantinedFile> quarantine = new HashMap<>();
+    private boolean dirty = false;
+    private ScannerThread scanner = null;
+    private final Object saveLock = new Object();
+
+    /**
+     * Creates the catalog and loads it from the cache directory if it has been saved before.
+     * @param cacheDir
+     */
+    public PhotoCatalog(File cacheDir) {
+        this.cacheDir = cacheDir;
+
+        File catalogFile = new File(cacheDir, CATALOG_FILE);
+        if (catalogFile.exists()) {
+            load(catalogFile);
+        }
+    }
+
+    /**
+     * Gets the photos in the catalog that are in the given directory.
+     * @param dir
+     * @param recursive Whether to include photos in child directories
+     * @return
+     */
+    public synchronized List<File> getFiles(File dir, boolean recursive) {
+        List<File> files = new ArrayList<>();
+
+        for (String path : photos.keySet()) {
+            File f = new File(path);
+            if (isInDirectory(f, dir, recursive)) {
+                files.add(f);
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Gets the directories in the catalog along with their recorded modification times.
+     * @param dir Top directory, included in the result if it is in the catalog
+     * @param recursive Whether to include child directories
+     * @return
+     */
+    public synchronized Map<File, Long> getDirectories(File dir, boolean recursive) {
+        Map<File, Long> dirs = new HashMap<>();
+
+        for (Map.Entry<String, Long> entry : directories.entrySet()) {
+            File d = new File(entry.getKey());
+            if (d.equals(dir) || (recursive && isInDirectory(d, dir, true))) {
+                dirs.put(d, entry.getValue());
+            }
+        }
+
+        return dirs;
+    }
+
+    /**
+     * Gets the catalog record for a photo.
+     * @param f
+     * @return null if the photo is not in the catalog
+     */
+    public synchronized PhotoInfo get(File f) {
+        PhotoInfo info = photos.get(f.getPath());
+        return (info != null) ? new PhotoInfo(info) : null;
+    }
+
+    /**
+     * Adds a photo to the catalog or updates its record. Metadata already in the catalog is kept if the size and
+     * modification time of the photo have not changed, otherwise the photo is queued for scanning.
+     * @param f
+     */
+    public synchronized void add(File f) {
+        String path = f.getPath();
+        long size = f.length();
+        long modified = f.lastModified();
+
+        PhotoInfo info = photos.get(path);
+        if (info != null && info.size == size && info.modified == modified) {
+            return;
+        }
+
+        photos.put(path, new PhotoInfo(path, size, modified));
+        dirty = true;
+
+        notifyAll();
+    }
+
+    public synchronized void remove(File f) {
+        if (photos.remove(f.getPath()) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Records the modification time a directory had when it was listed.
+     * @param dir
+     * @param modified
+     */
+    public synchronized void setDirectory(File dir, long modified) {
+        Long previous = directories.put(dir.getPath(), modified);
+
+        if (previous == null || previous != modified) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Removes a directory and all directories beneath it, along with any quarantined files in them. Photos are not
+     * removed, see remove().
+     * @param dir
+     */
+    public synchronized void removeDirectory(File dir) {
+        Iterator<String> it = directories.keySet().iterator();
+
+        while (it.hasNext()) {
+            File d = new File(it.next());
+            if (d.equals(dir) || isInDirectory(d, dir, true)) {
+                it.remove();
+                dirty = true;
+            }
+        }
+
+        Iterator<String> quarantineIt = quarantine.keySet().iterator();
+        while (quarantineIt.hasNext()) {
+            if (isInDirectory(new File(quarantineIt.next()), dir, true)) {
+                quarantineIt.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Puts a file in quarantine, it stays there until its size or modification time changes.
+     * @param f
+     * @param reason QUARANTINE_NOT_IMAGE or QUARANTINE_DECODE_FAILED
+     */
+    public synchronized void quarantine(File f, int reason) {
+        quarantine.put(f.getPath(), new QuarantinedFile(f.length(), f.lastModified(), reason));
+        dirty = true;
+    }
+
+    /**
+     * Checks if a file is in quarantine. A file that has changed since it was quarantined is released from the
+     * quarantine so that it can be checked again.
+     * @param f
+     * @return
+     */
+    public synchronized boolean isQuarantined(File f) {
+        QuarantinedFile quarantined = quarantine.get(f.getPath());
+        if (quarantined == null) {
+            return false;
+        }
+
+        if (quarantined.size == f.length() && quarantined.modified == f.lastModified()) {
+            return true;
+        }
+
+        quarantine.remove(f.getPath());
+        dirty = true;
+
+        return false;
+    }
+
+    /**
+     * Gets the quarantined files in the given directory.
+     * @param dir
+     * @param recursive Whether to include files in child directories
+     * @return
+     */
+    public synchronized List<File> getQuarantinedFiles(File dir, boolean recursive) {
+        List<File> files = new ArrayList<>();
+
+        for (String path : quarantine.keySet()) {
+            File f = new File(path);
+            if (isInDirectory(f, dir, recursive)) {
+                files.add(f);
+            }
+        }
+
+        return files;
+    }
+
+    public synchronized boolean isEmpty() {
+        return photos.isEmpty() && directories.isEmpty();
+    }
+
+    /**
+     * Starts scanning photos for metadata in the background.
+     */
+    public synchronized void startScanning() {
+        if (scanner == null) {
+            scanner = new ScannerThread();
+            scanner.start();
+        }
+    }
+
+    /**
+     * Stops the background scan and saves the catalog.
+     */
+    public void stopScanning() {
+        ScannerThread s;
+        synchronized (this) {
+            s = scanner;
+            scanner = null;
+        }
+
+        if (s != null) {
+            s.interrupt();
+            try {
+                s.join();
+            }
+            catch (InterruptedException e) {
+                // stopping anyway
+            }
+        }
+
+        save();
+    }
+
+    /**
+     * Writes the catalog to disk if it has changed. The catalog is written to a temporary file first and then moved
+     * over the existing catalog so a crash can't leave a partly written catalog behind.
+     *
+     * Only taking a copy of the catalog holds the catalog lock, the copy is written without it so lookups and updates
+     * are not held up by the disk.
+     */
+    public void save() {
+        synchronized (saveLock) {
+            Map<String, Long> directories;
+            List<PhotoInfo> photos;
+            Map<String, QuarantinedFile> quarantine;
+
+            // records are replaced rather than modified, so copying the references is enough
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+
+                directories = new HashMap<>(this.directories);
+                photos = new ArrayList<>(this.photos.values());
+                quarantine = new HashMap<>(this.quarantine);
+                dirty = false;
+            }
+
+            if (!write(directories, photos, quarantine)) {
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a copy of the catalog to the temporary file and moves it over the existing catalog.
+     * @param directories
+     * @param photos
+     * @param quarantine
+     * @return true if the catalog was written
+     */
+    private boolean write(Map<String, Long> directories, List<PhotoInfo> photos,
+                          Map<String, QuarantinedFile> quarantine)
+    {
+        File tempFile = new File(cacheDir, CATALOG_TEMP_FILE);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile), CATALOG_BUFFER_SIZE)))
+        {
+            out.writeInt(CATALOG_MAGIC);
+            out.writeInt(CATALOG_VERSION);
+
+            out.writeInt(directories.size());
+            for (Map.Entry<String, Long> entry : directories.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+
+            out.writeInt(photos.size());
+            for (PhotoInfo info : photos) {
+                out.writeUTF(info.path);
+                out.writeLong(info.size);
+                out.writeLong(info.modified);
+                out.writeBoolean(info.scanned);
+                out.writeInt(info.width);
+                out.writeInt(info.height);
+                out.writeByte(info.orientation);
+                out.writeLong(info.captureDate);
+            }
+
+            out.writeInt(quarantine.size());
+            for (Map.Entry<String, QuarantinedFile> entry : quarantine.entrySet()) {
+                QuarantinedFile quarantined = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(quarantined.size);
+                out.writeLong(quarantined.modified);
+                out.writeByte(quarantined.reason);
+            }
+        }
+        catch (IOException e) {
+            Log.error("Could not write photo catalog", e);
+            return false;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), new File(cacheDir, CATALOG_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+        catch (IOException e) {
+            Log.error("Could not replace photo catalog", e);
+            return false;
+        }
+    }
+
+    private void load(File catalogFile) {
+        long startTime = System.currentTimeMillis();
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(catalogFile), CATALOG_BUFFER_SIZE)))
+        {
+            if (in.readInt() != CATALOG_MAGIC) {
+                throw new IOException("Unrecognised photo catalog format");
+            }
+
+            // version 1 catalogs are the same apart from not having a quarantine
+            int version = in.readInt();
+            if (version < 1 || version > CATALOG_VERSION) {
+                throw new IOException("Unsupported photo catalog version: " + version);
+            }
+
+            int dirCount = in.readInt();
+            for (int i = 0; i < dirCount; i++) {
+                directories.put(in.readUTF(), in.readLong());
+            }
+
+            int photoCount = in.readInt();
+            for (int i = 0; i < photoCount; i++) {
+                PhotoInfo info = new PhotoInfo(in.readUTF(), in.readLong(), in.readLong());
+                info.scanned = in.readBoolean();
+                info.width = in.readInt();
+                info.height = in.readInt();
+                info.orientation = in.readByte();
+                info.captureDate = in.readLong();
+
+                photos.put(info.path, info);
+            }
+
+            if (version >= 2) {
+                int quarantineCount = in.readInt();
+                for (int i = 0; i < quarantineCount; i++) {
+                    quarantine.put(in.readUTF(), new QuarantinedFile(in.readLong(), in.readLong(), in.readByte()));
+                }
+            }
+
+            Log.info("Loaded photo catalog with " + photos.size() + " photos and " + quarantine.size() +
+                    " quarantined files in " + (System.currentTimeMillis() - startTime) + "ms");
+        }
+        catch (IOException e) {
+            Log.warning("Could not load photo catalog, it will be rebuilt: " + e.getMessage());
+            photos.clear();
+            directories.clear();
+            quarantine.clear();
+        }
+    }
+
+    /**
+     * Gets a batch of photos that have not been scanned yet.
+     * @param wait Whether to wait for photos to be added if there are none to scan
+     * @return Empty if there are no photos to scan
+     * @throws InterruptedException
+     */
+    private synchronized List<PhotoInfo> nextScanBatch(boolean wait) throws InterruptedException {
+        List<PhotoInfo> batch = getUnscanned();
+
+        if (batch.isEmpty() && wait) {
+            wait(SCAN_IDLE_WAIT);
+            batch = getUnscanned();
+        }
+
+        return batch;
+    }
+
+    private List<PhotoInfo> getUnscanned() {
+        List<PhotoInfo> batch = new ArrayList<>();
+
+        for (PhotoInfo info : photos.values()) {
+            if (!info.scanned) {
+                batch.add(new PhotoInfo(info));
+                if (batch.size() == SCAN_BATCH_SIZE) {
+                    break;
+                }
+            }
+        }
+
+        return batch;
+    }
+
+    /**
+     * Stores the scanned metadata, unless the photo has changed or been removed in the meantime.
+     * @param scanned
+     */
+    private synchronized void updateScanned(PhotoInfo scanned) {
+        PhotoInfo info = photos.get(scanned.path);
+
+        if (info != null && info.size == scanned.size && info.modified == scanned.modified) {
+            photos.put(scanned.path, scanned);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Reads the dimensions, EXIF orientation and capture date of a photo. Missing metadata is left at the defaults.
+     * @param info
+     */
+    private static void scan(PhotoInfo info) {
+        File f = new File(info.path);
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(f)) {
+            Iterator<ImageReader> readers = (input != null) ? ImageIO.getImageReaders(input) : null;
+
+            if (readers != null && readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(input, true, true);
+                    info.width = reader.getWidth(0);
+                    info.height = reader.getHeight(0);
+                }
+                finally {
+                    reader.dispose();
+                }
+            }
+        }
+        catch (Exception e) {
+            Log.verbose("Could not read dimensions of " + info.path + ": " + e.getMessage());
+        }
+
+        LLJTran llj = new LLJTran(f);
+        try {
+            llj.read(LLJTran.READ_INFO, true);
+            AbstractImageInfo<?> imageInfo = llj.getImageInfo();
+
+            if (imageInfo instanceof Exif) {
+                Exif exif = (Exif) imageInfo;
+
+                Entry orientationTag = exif.getTagValue(Exif.ORIENTATION, true);
+                if (orientationTag != null) {
+                    info.orientation = (Integer) orientationTag.getValue(0);
+                }
+
+                Date captureDate = exif.getDateTimeOriginal();
+                if (captureDate != null) {
+                    info.captureDate = captureDate.getTime();
+                }
+            }
+        }
+        catch (Exception e) {
+            // not a JPEG or no EXIF data
+        }
+        finally {
+            llj.closeInternalInputStream();
+            llj.freeMemory();
+        }
+
+        info.scanned = true;
+    }
+
+    private static boolean isInDirectory(File f, File dir, boolean recursive) {
+        if (recursive) {
+            return f.getPath().startsWith(dir.getPath() + File.separator);
+        }
+
+        return dir.equals(f.getParentFile());
+    }
+
+    /**
+     * Scans photos that have no metadata yet. The catalog is saved every SCAN_SAVE_INTERVAL while scanning and once
+     * there is nothing left to scan.
+     */
+    private class ScannerThread extends Thread {
+
+        ScannerThread() {
+            setName("PhotoCatalogScanner");
+            setPriority(MIN_PRIORITY);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Log.verbose("Starting photo catalog scanner thread");
+
+            long lastSave = System.currentTimeMillis();
+
+            try {
+                while (!isInterrupted()) {
+                    List<PhotoInfo> batch = nextScanBatch(false);
+
+                    if (batch.isEmpty()) {
+                        save();
+                        lastSave = System.currentTimeMillis();
+                        batch = nextScanBatch(true);
+                    }
+
+                    long startTime = System.currentTimeMillis();
+
+                    for (PhotoInfo info : batch) {
+                        if (isInterrupted()) {
+                            break;
+                        }
+
+                        scan(info);
+                        updateScanned(info);
+
+                        if (System.currentTimeMillis() - lastSave >= SCAN_SAVE_INTERVAL) {
+                            save();
+                            lastSave = System.currentTimeMillis();
+                        }
+                    }
+
+                    if (!batch.isEmpty()) {
+                        Log.verbose("Scanned " + batch.size() + " photos in " +
+                                (System.currentTimeMillis() - startTime) + "ms");
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // stopping
+            }
+
+            Log.verbose("Exiting photo catalog scanner thread");
+        }
+    }
+
+    /**
+     * Size and modification time of a quarantined file when it was quarantined.
+     */
+    private static class QuarantinedFile {
+        long size;
+        long modified;
+        int reason;
+
+        QuarantinedFile(long size, long modified, int reason) {
+            this.size = size;
+            this.modified = modified;
+            this.reason = reason;
+        }
+    }
+
+}
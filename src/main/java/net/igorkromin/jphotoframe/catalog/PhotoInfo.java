@@ -0,0 +1,97 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe.catalog;
+
+/**
+ * Catalog record for a single photo. Dimensions, orientation and capture date are only known once the photo has been
+ * scanned, see isScanned().
+ */
+public class PhotoInfo {
+
+    public static final int ORIENTATION_NORMAL = 1;
+
+    String path;
+    long size;
+    long modified;
+    int width = 0;
+    int height = 0;
+    int orientation = ORIENTATION_NORMAL;
+    long captureDate = 0;
+    boolean scanned = false;
+
+    PhotoInfo(String path, long size, long modified) {
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+    }
+
+    PhotoInfo(PhotoInfo info) {
+        this.path = info.path;
+        this.size = info.size;
+        this.modified = info.modified;
+        this.width = info.width;
+        this.height = info.height;
+        this.orientation = info.orientation;
+        this.captureDate = info.captureDate;
+        this.scanned = info.scanned;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the EXIF orientation of the photo.
+     * @return ORIENTATION_NORMAL if the photo has no orientation tag
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * Returns the time the photo was taken from the EXIF data.
+     * @return 0 if not known
+     */
+    public long getCaptureDate() {
+        return captureDate;
+    }
+
+    public boolean isScanned() {
+        return scanned;
+    }
+
+}
@@ -26,12 +26,13 @@ import java.awt.image.BufferedImage;
 
 /**
  * Defines methods for generating a background image to fill in empty space
- * where a scaled image isn't drawn.
+ * where a scaled image isn't drawn. The buffer passed to initialise() sets the
+ * dimensions, all buffers passed to fillBackground() must have the same size.
  */
 public interface BackgroundFiller {
 
     void initialise(BufferedImage buffer, ConfigOptions config);
 
-    void fillBackground(BufferedImage srcImage);
+    void fillBackground(BufferedImage srcImage, BufferedImage buffer);
 
 }
@@ -30,15 +30,13 @@ import java.awt.image.BufferedImage;
  */
 public class BlackFiller implements BackgroundFiller {
 
-    private BufferedImage buffer;
-
     @Override
     public void initialise(BufferedImage buffer, ConfigOptions config) {
-        this.buffer = buffer;
+        // nothing to initialise
     }
 
     @Override
-    public void fillBackground(BufferedImage srcImage) {
+    public void fillBackground(BufferedImage srcImage, BufferedImage buffer) {
         Graphics2D g = buffer.createGraphics();
 
         g.setColor(Color.black);
@@ -39,7 +39,6 @@ import java.awt.image.BufferedImage;
  */
 public class ContainAspectScaler implements ImageScaler {
 
-    private BufferedImage buffer;
     private AffineTransform tx = new AffineTransform();
     private int bufferWidth;
     private int bufferHeight;
@@ -47,8 +46,6 @@ public class ContainAspectScaler implements ImageScaler {
 
     @Override
     public void initialise(BufferedImage buffer, ConfigOptions config) {
-        this.buffer = buffer;
-
         bufferWidth = buffer.getWidth();
         bufferHeight = buffer.getHeight();
         bufferAspect = (float) bufferWidth / bufferHeight;
@@ -57,7 +54,7 @@ public class ContainAspectScaler implements ImageScaler {
     }
 
     @Override
-    public void drawScaledImage(BufferedImage srcImage) {
+    public void drawScaledImage(BufferedImage srcImage, BufferedImage buffer) {
         // determine the size and aspect ratio of the loaded image
         int imageWidth = srcImage.getWidth();
         int imageHeight = srcImage.getHeight();
@@ -65,8 +62,7 @@ public class ContainAspectScaler implements ImageScaler {
 
         Log.verbose("Image dimensions=" + imageWidth + "x" + imageHeight + " aspect=" + imageAspect);
 
-        double scalar = Math.min(getScaleFactor(imageHeight, bufferHeight),
-                getScaleFactor(imageWidth, bufferWidth));
+        double scalar = getScalar(imageWidth, imageHeight);
 
         Log.verbose("Image dimension scalar=" + scalar);
 
@@ -84,6 +80,18 @@ public class ContainAspectScaler implements ImageScaler {
         g.dispose();
     }
 
+    @Override
+    public double getScalar(int imageWidth, int imageHeight) {
+        return Math.min(getScaleFactor(imageHeight, bufferHeight),
+                getScaleFactor(imageWidth, bufferWidth));
+    }
+
+
+    @Override
+    public Rectangle getSourceRegion(int imageWidth, int imageHeight) {
+        // the whole image always fits within the buffer
+        return null;
+    }
 
     private double getScaleFactor(int iMasterSize, int iTargetSize) {
         double dScale;
@@ -38,7 +38,6 @@ import java.awt.image.BufferedImage;
  */
 public class CoverAspectScaler implements ImageScaler {
 
-    private BufferedImage buffer;
     private AffineTransform tx = new AffineTransform();
     private int bufferWidth;
     private int bufferHeight;
@@ -46,8 +45,6 @@ public class CoverAspectScaler implements ImageScaler {
 
     @Override
     public void initialise(BufferedImage buffer, ConfigOptions config) {
-        this.buffer = buffer;
-
         bufferWidth = buffer.getWidth();
         bufferHeight = buffer.getHeight();
         bufferAspect = (float) bufferWidth / bufferHeight;
@@ -56,7 +53,7 @@ public class CoverAspectScaler implements ImageScaler {
     }
 
     @Override
-    public void drawScaledImage(BufferedImage srcImage) {
+    public void drawScaledImage(BufferedImage srcImage, BufferedImage buffer) {
         // determine the size and aspect ratio of the loaded image
         int imageWidth = srcImage.getWidth();
         int imageHeight = srcImage.getHeight();
@@ -64,14 +61,7 @@ public class CoverAspectScaler implements ImageScaler {
 
         Log.verbose("Image dimensions=" + imageWidth + "x" + imageHeight + " aspect=" + imageAspect);
 
-        // adjust the size to the current buffer based on aspect ratio
-        float scalar;
-        if (imageAspect < 1.f) { // portrait
-            scalar = (float) bufferHeight / imageHeight;
-        }
-        else { // landscape
-            scalar = (float) bufferWidth / imageWidth;
-        }
+        double scalar = getScalar(imageWidth, imageHeight);
 
         Log.verbose("Image dimension scalar=" + scalar);
 
@@ -89,4 +79,37 @@ public class CoverAspectScaler implements ImageScaler {
         g.dispose();
     }
 
+    @Override
+    public double getScalar(int imageWidth, int imageHeight) {
+        float imageAspect = (float) imageWidth / imageHeight;
+
+        // adjust the size to the current buffer based on aspect ratio
+        if (imageAspect < 1.f) { // portrait
+            return (float) bufferHeight / imageHeight;
+        }
+        else { // landscape
+            return (float) bufferWidth / imageWidth;
+        }
+    }
+
+    /**
+     * Returns the centered part of the image that falls within the buffer. Since the region has the aspect ratio of
+     * the buffer along the cropped side, drawing the region alone picks the same scale factor as drawing the whole
+     * image.
+     */
+    @Override
+    public Rectangle getSourceRegion(int imageWidth, int imageHeight) {
+        double scalar = getScalar(imageWidth, imageHeight);
+
+        int visibleWidth = (int) Math.min(imageWidth, Math.ceil(bufferWidth / scalar));
+        int visibleHeight = (int) Math.min(imageHeight, Math.ceil(bufferHeight / scalar));
+
+        if (visibleWidth == imageWidth && visibleHeight == imageHeight) {
+            return null;
+        }
+
+        return new Rectangle((imageWidth - visibleWidth) / 2, (imageHeight - visibleHeight) / 2,
+                visibleWidth, visibleHeight);
+    }
+
 }
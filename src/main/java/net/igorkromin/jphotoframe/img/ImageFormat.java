@@ -0,0 +1,105 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe.img;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Detects image file formats from the magic bytes at the start of the file, without handing the file to a decoder.
+ */
+public class ImageFormat {
+
+    public static final String FORMAT_JPEG = "jpeg";
+    public static final String FORMAT_PNG = "png";
+    public static final String FORMAT_GIF = "gif";
+    public static final String FORMAT_BMP = "bmp";
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte[] JPEG_MAGIC = {(byte) 0xff, (byte) 0xd8, (byte) 0xff};
+    private static final byte[] PNG_MAGIC = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] GIF87_MAGIC = {'G', 'I', 'F', '8', '7', 'a'};
+    private static final byte[] GIF89_MAGIC = {'G', 'I', 'F', '8', '9', 'a'};
+    private static final byte[] BMP_MAGIC = {'B', 'M'};
+
+    /**
+     * Reads the start of a file and works out its image format.
+     * @param f
+     * @return null if the file is not in a supported image format or can't be read
+     */
+    public static String detect(File f) {
+        byte[] header = new byte[HEADER_SIZE];
+        int length = 0;
+
+        try (InputStream in = new FileInputStream(f)) {
+            int read;
+            while (length < HEADER_SIZE && (read = in.read(header, length, HEADER_SIZE - length)) > 0) {
+                length += read;
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+
+        return detect(header, length);
+    }
+
+    /**
+     * Works out the image format from the first bytes of a file.
+     * @param header
+     * @param length Number of bytes in the header array that were read
+     * @return null if the header does not match a supported image format
+     */
+    public static String detect(byte[] header, int length) {
+        if (startsWith(header, length, JPEG_MAGIC)) {
+            return FORMAT_JPEG;
+        }
+        else if (startsWith(header, length, PNG_MAGIC)) {
+            return FORMAT_PNG;
+        }
+        else if (startsWith(header, length, GIF87_MAGIC) || startsWith(header, length, GIF89_MAGIC)) {
+            return FORMAT_GIF;
+        }
+        else if (startsWith(header, length, BMP_MAGIC)) {
+            return FORMAT_BMP;
+        }
+
+        return null;
+    }
+
+    private static boolean startsWith(byte[] header, int length, byte[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+
+        for (int i = 0; i < magic.length; i++) {
+            if (header[i] != magic[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+}
@@ -22,16 +22,35 @@ package net.igorkromin.jphotoframe.img;
 
 import net.igorkromin.jphotoframe.ConfigOptions;
 
+import java.awt.*;
 import java.awt.image.BufferedImage;
 
 /**
  * Defines methods for transforming a source image from its original dimensions to
- * device dimensions.
+ * device dimensions. The buffer passed to initialise() sets the dimensions, all
+ * buffers passed to drawScaledImage() must have the same size.
  */
 public interface ImageScaler {
 
     void initialise(BufferedImage buffer, ConfigOptions config);
 
-    void drawScaledImage(BufferedImage srcImage);
+    void drawScaledImage(BufferedImage srcImage, BufferedImage buffer);
+
+    /**
+     * Returns the scale factor that would be applied to an image of the given dimensions when it is drawn.
+     * @param imageWidth
+     * @param imageHeight
+     * @return
+     */
+    double getScalar(int imageWidth, int imageHeight);
+
+    /**
+     * Returns the part of an image of the given dimensions that would be visible in the buffer after it is drawn. The
+     * scaler must draw the returned region the same way as it would draw the whole image.
+     * @param imageWidth
+     * @param imageHeight
+     * @return null if the whole image is visible
+     */
+    Rectangle getSourceRegion(int imageWidth, int imageHeight);
 
 }
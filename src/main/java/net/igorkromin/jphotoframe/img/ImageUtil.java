@@ -21,16 +21,25 @@
 package net.igorkromin.jphotoframe.img;
 
 import net.igorkromin.jphotoframe.Log;
+import net.igorkromin.jphotoframe.archive.ZipArchive;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
 import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * Utility methods for image handling.
@@ -46,24 +55,80 @@ public class ImageUtil {
      * rethrown.
      * @param imageFile File to write the image to
      * @param bufferedImage Source buffered image object
+     * @return true if the image was written
      */
-    public static void writeImage(final File imageFile, final BufferedImage bufferedImage)
+    public static boolean writeImage(final File imageFile, final BufferedImage bufferedImage)
+    {
+        ImageWriter writer = createJpegWriter();
+        try {
+            return writeImage(writer, imageFile, bufferedImage);
+        }
+        finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Writes a buffered image to a file as JPG using the given writer. The writer is left reset so that it can be
+     * reused for the next image, it is up to the caller to dispose of it. All exceptions are caught and logged but
+     * not rethrown.
+     * @param writer JPG image writer, see createJpegWriter()
+     * @param imageFile File to write the image to
+     * @param bufferedImage Source buffered image object
+     * @return true if the image was written
+     */
+    public static boolean writeImage(final ImageWriter writer, final File imageFile, final BufferedImage bufferedImage)
     {
         Log.verbose("Writing image: " + imageFile.getAbsolutePath());
 
+        FileImageOutputStream output = null;
         try {
             JPEGImageWriteParam jpegParams = new JPEGImageWriteParam(null);
             jpegParams.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
             jpegParams.setCompressionQuality(1.0f);
 
-            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
-            writer.setOutput(new FileImageOutputStream(imageFile));
+            output = new FileImageOutputStream(imageFile);
+            writer.setOutput(output);
 
             writer.write(null, new IIOImage(bufferedImage, null, null), jpegParams);
+            return true;
         }
         catch (Exception e) {
             Log.error("Failed to cache image: " + imageFile.getAbsolutePath() + " cause: " + e.getMessage(), e);
+            return false;
         }
+        finally {
+            writer.reset();
+
+            if (output != null) {
+                try {
+                    output.close();
+                }
+                catch (IOException e) {
+                    // ignore the exception on close
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a JPG image writer. The writer should be disposed of once it is no longer needed.
+     * @return
+     */
+    public static ImageWriter createJpegWriter() {
+        return ImageIO.getImageWritersByFormatName("jpg").next();
+    }
+
+    /**
+     * Creates a new, blank image with the same dimensions and pixel layout as the template image.
+     * @param template Image to copy the dimensions and colour model from
+     * @return
+     */
+    public static BufferedImage createCompatibleImage(final BufferedImage template) {
+        ColorModel cm = template.getColorModel();
+        WritableRaster raster = cm.createCompatibleWritableRaster(template.getWidth(), template.getHeight());
+
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
     }
 
     /**
@@ -85,24 +150,60 @@ public class ImageUtil {
 
     /**
      * Lodads an image from the provided image file. If the passed in file is null a RuntimeException is thrown. If the
-     * image file cannot be read, a RuntimeException is also thrown.
+     * image file cannot be read, a RuntimeException is also thrown. The image is decoded at full resolution unless
+     * that would exceed the decode memory budget.
      * @param imageFile
      * @return
      */
     public static BufferedImage readImage(final File imageFile) {
+        return readImage(imageFile, null);
+    }
+
+    /**
+     * Loads an image from the provided image file, decoding only as many pixels as the scaler needs. The image header
+     * is read first to get the image dimensions, which are used to pick a source subsampling factor so that the
+     * decoded image is no less than the size the scaler will draw it at. If the scaler crops the image, only the
+     * visible region of the image is decoded. Exceptions are thrown in the same way as for readImage(File).
+     *
+     * Decoding is checked against the MemoryGovernor budget before any pixels are read. Images that would not fit are
+     * subsampled further or skipped.
+     *
+     * Files that refer to entries of open ZIP archives are read from the archive, see ZipArchive.
+     * @param imageFile
+     * @param scaler Scaler that the image will be drawn with, null to decode the whole image at full resolution
+     * @return
+     */
+    public static BufferedImage readImage(final File imageFile, final ImageScaler scaler) {
 
         if (imageFile == null) {
             throw new RuntimeException("Image file is null");
         }
 
         try {
-            BufferedImage img = ImageIO.read(imageFile);
-
-            if (img == null) {
-                throw new RuntimeException("Could not load image file: " + imageFile);
+            ImageInputStream input = (ZipArchive.getEntry(imageFile) != null) ?
+                    ZipArchive.openImageInputStream(imageFile) : ImageIO.createImageInputStream(imageFile);
+            if (input == null) {
+                throw new RuntimeException("Could not open image file: " + imageFile);
             }
 
-            return img;
+            try {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+                if (!readers.hasNext()) {
+                    throw new RuntimeException("Could not load image file: " + imageFile);
+                }
+
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(input, true, true);
+                    return readImage(reader, imageFile, scaler);
+                }
+                finally {
+                    reader.dispose();
+                }
+            }
+            finally {
+                input.close();
+            }
         }
         catch (IOException|OutOfMemoryError e) {
             Log.error("Could not load file: " + imageFile.getAbsolutePath(), e);
@@ -110,4 +211,97 @@ public class ImageUtil {
         }
     }
 
+    private static BufferedImage readImage(ImageReader reader, File imageFile, ImageScaler scaler)
+            throws IOException
+    {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+
+        int subsampling = 1;
+        Rectangle region = null;
+
+        if (scaler != null) {
+            subsampling = getSubsampling(scaler.getScalar(width, height));
+            region = scaler.getSourceRegion(width, height);
+        }
+
+        int regionWidth = (region != null) ? region.width : width;
+        int regionHeight = (region != null) ? region.height : height;
+        int bytesPerPixel = getBytesPerPixel(reader);
+
+        // check the decoded size against the memory budget before decoding anything
+        int fitSubsampling = MemoryGovernor.fitSubsampling(regionWidth, regionHeight, bytesPerPixel, subsampling);
+        if (fitSubsampling == MemoryGovernor.SKIP) {
+            Log.warning("Skipping image " + imageFile.getAbsolutePath() + ", dimensions=" + width + "x" + height +
+                    " will not fit in the decode memory budget");
+            throw new RuntimeException("Image too large to decode: " + imageFile);
+        }
+        else if (fitSubsampling != subsampling) {
+            Log.verbose("Increasing subsampling to fit the decode memory budget");
+            subsampling = fitSubsampling;
+        }
+
+        ImageReadParam param = reader.getDefaultReadParam();
+
+        if (region != null) {
+            Log.verbose("Decoding image region=" + region.x + "," + region.y + " " +
+                    region.width + "x" + region.height);
+            param.setSourceRegion(region);
+        }
+
+        if (subsampling > 1) {
+            Log.verbose("Decoding image dimensions=" + width + "x" + height + " subsampling=" + subsampling);
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+
+        long bytes = MemoryGovernor.estimate(regionWidth, regionHeight, bytesPerPixel, subsampling);
+        try {
+            MemoryGovernor.reserve(bytes);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to decode image: " + imageFile);
+        }
+
+        try {
+            return reader.read(0, param);
+        }
+        finally {
+            MemoryGovernor.release(bytes);
+        }
+    }
+
+    /**
+     * Works out the bytes per pixel of the image the reader will decode, from the colour model in the image header.
+     * @param reader
+     * @return 0 if the image type is not known
+     */
+    private static int getBytesPerPixel(ImageReader reader) throws IOException {
+        ImageTypeSpecifier type = reader.getRawImageType(0);
+
+        if (type == null) {
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            type = (types.hasNext()) ? types.next() : null;
+        }
+
+        if (type == null) {
+            return 0;
+        }
+
+        return (type.getColorModel().getPixelSize() + 7) / 8;
+    }
+
+    /**
+     * Works out the largest whole subsampling factor that keeps the decoded image at or above the drawn size.
+     * @param scalar Scale factor the image will be drawn at
+     * @return 1 if the image is not scaled down by at least half, otherwise the subsampling factor
+     */
+    private static int getSubsampling(double scalar) {
+        if (scalar <= 0 || scalar >= 0.5) {
+            return 1;
+        }
+
+        return (int) Math.floor(1.0 / scalar);
+    }
+
 }
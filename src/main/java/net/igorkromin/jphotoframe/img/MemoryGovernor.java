@@ -0,0 +1,126 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+package net.igorkromin.jphotoframe.img;
+
+import net.igorkromin.jphotoframe.Log;
+
+/**
+ * Keeps image decoding within a heap budget. The budget is a share of the maximum heap size and is shared by all
+ * threads that decode images.
+ *
+ * Before decoding, the size of the decoded raster is estimated from the image header. If the raster can't fit in the
+ * budget, a larger subsampling factor is picked. If it still doesn't fit at the maximum subsampling, the image should
+ * be skipped. Decoding threads reserve their estimate before decoding and release it after, waiting for other decodes
+ * to finish if the budget is used up.
+ */
+public class MemoryGovernor {
+
+    public static final int SKIP = -1;
+
+    private static final int MAX_SUBSAMPLING = 32;
+    private static final int DEFAULT_BYTES_PER_PIXEL = 4;
+
+    private static final Object lock = new Object();
+    private static volatile long budget = Runtime.getRuntime().maxMemory() / 2;
+    private static long reserved = 0;
+
+    /**
+     * Sets the budget as a fraction of the maximum heap size.
+     * @param fraction
+     */
+    public static void setBudget(float fraction) {
+        long bytes = (long) (Runtime.getRuntime().maxMemory() * fraction);
+
+        synchronized (lock) {
+            budget = bytes;
+            // a larger budget may let waiting decodes go ahead
+            lock.notifyAll();
+        }
+
+        Log.verbose("Image decode memory budget=" + (bytes / 1024 / 1024) + "MB");
+    }
+
+    public static long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Estimates the number of bytes needed to hold a decoded image.
+     * @param width Width of the decoded region
+     * @param height Height of the decoded region
+     * @param bytesPerPixel Bytes per pixel of the decoded image, 0 or less if not known
+     * @param subsampling Subsampling applied to both axes
+     * @return
+     */
+    public static long estimate(int width, int height, int bytesPerPixel, int subsampling) {
+        long w = (width + subsampling - 1) / subsampling;
+        long h = (height + subsampling - 1) / subsampling;
+        int bpp = (bytesPerPixel > 0) ? bytesPerPixel : DEFAULT_BYTES_PER_PIXEL;
+
+        return w * h * bpp;
+    }
+
+    /**
+     * Picks the smallest subsampling factor, starting at the requested one, whose decoded image fits in the budget.
+     * @param width Width of the decoded region
+     * @param height Height of the decoded region
+     * @param bytesPerPixel Bytes per pixel of the decoded image, 0 or less if not known
+     * @param subsampling Requested subsampling
+     * @return SKIP if the image doesn't fit even at the maximum subsampling
+     */
+    public static int fitSubsampling(int width, int height, int bytesPerPixel, int subsampling) {
+        for (int s = Math.max(subsampling, 1); s <= MAX_SUBSAMPLING; s++) {
+            if (estimate(width, height, bytesPerPixel, s) <= budget) {
+                return s;
+            }
+        }
+
+        return SKIP;
+    }
+
+    /**
+     * Reserves memory for a decode, waiting until enough of the budget is free.
+     * @param bytes
+     * @throws InterruptedException
+     */
+    public static void reserve(long bytes) throws InterruptedException {
+        synchronized (lock) {
+            // a single reservation is always allowed so an oversized one can't wait forever
+            while (reserved > 0 && reserved + bytes > budget) {
+                Log.verbose("Waiting for image decode memory, reserved=" + reserved + " requested=" + bytes);
+                lock.wait();
+            }
+
+            reserved += bytes;
+        }
+    }
+
+    /**
+     * Releases memory reserved for a decode.
+     * @param bytes
+     */
+    public static void release(long bytes) {
+        synchronized (lock) {
+            reserved -= bytes;
+            lock.notifyAll();
+        }
+    }
+
+}
@@ -38,7 +38,6 @@ import java.awt.image.BufferedImage;
  */
 public class StretchScaleFiller implements BackgroundFiller {
 
-    private BufferedImage buffer;
     AffineTransform txFill = new AffineTransform();
     AffineTransformOp backgroundOp;
     private int bufferWidth;
@@ -48,8 +47,6 @@ public class StretchScaleFiller implements BackgroundFiller {
 
     @Override
     public void initialise(BufferedImage buffer, ConfigOptions config) {
-        this.buffer = buffer;
-
         bufferWidth = buffer.getWidth();
         bufferHeight = buffer.getHeight();
 
@@ -62,7 +59,7 @@ public class StretchScaleFiller implements BackgroundFiller {
     }
 
     @Override
-    public void fillBackground(BufferedImage srcImage) {
+    public void fillBackground(BufferedImage srcImage, BufferedImage buffer) {
         BufferedImage background = createScaledTranslucentImage(srcImage);
 
         // transform op to stretch the background image to the buffer dimensions
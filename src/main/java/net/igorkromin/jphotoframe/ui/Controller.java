@@ -48,7 +48,9 @@ public class Controller extends EventController {
         dataThreads = new ArrayList<>(3);
 
         dataThreads.add(new TimeUpdateThread(this, config, data, 1000));
-        dataThreads.add(new PhotoUpdateThread(this, config, data, config.getImageTimeout(), view.getImageBuffer()));
+        // one buffer on screen, one being composed, plus one for each look ahead photo
+        FrameBuffers buffers = view.createFrameBuffers(config.getLookAheadCount() + 2);
+        dataThreads.add(new PhotoUpdateThread(this, config, data, config.getImageTimeout(), buffers));
 
         if (config.isShowWeather()) {
             dataThreads.add(new WeatherUpdateThread(this, config, data, config.getWeatherUpdateTime()));
@@ -64,6 +66,8 @@ public class Controller extends EventController {
         Log.info("Starting photo frame");
 
         try {
+            view.startRendering();
+
             // start all the support threads
             for (DataUpdateThread t : dataThreads) {
                 t.start();
@@ -98,11 +102,15 @@ public class Controller extends EventController {
     }
 
     /**
-     * Updates the view if the model data has changed since the last time the view was updated.
+     * Updates the view if the model data has changed since the last time the view was updated. The whole view is only
+     * repainted when the image has changed, otherwise only the areas of the widgets that changed are repainted.
      */
     public synchronized void requestUpdate() {
-        if (data.hasChanged()) {
-            view.repaint();
+        if (data.hasImageChanged()) {
+            view.repaintAll();
+        }
+        else if (data.hasChanged()) {
+            view.repaintWidgets();
         }
         else {
             Log.verbose("Data not changed");
@@ -51,6 +51,13 @@ public abstract class DataUpdateThread extends Thread {
 
         Log.verbose("Starting data update thread");
 
+        try {
+            beforeStart();
+        }
+        catch (Exception e) {
+            Log.error("Error after thread start", e);
+        }
+
         while (!controller.isStopping()) {
             controller.waitIfPaused();
             long startTime = System.currentTimeMillis();
@@ -109,12 +116,22 @@ public abstract class DataUpdateThread extends Thread {
         return data;
     }
 
+    protected int getSleepTime() {
+        return sleepTime;
+    }
+
     protected void doNotRun() {
         doNotRun = true;
     }
 
     public abstract void doUpdate();
 
+    /**
+     * Called once the thread starts, before the first update. This implementation doesn't do anything so concrete
+     * implementing classes need to override this method.
+     */
+    public void beforeStart() {}
+
     /**
      * Called before the thread terminates. This implementation doesn't do anything so concrete implementing classes
      * need to override this method.
@@ -0,0 +1,142 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe.ui;
+
+import net.igorkromin.jphotoframe.Log;
+import net.igorkromin.jphotoframe.img.ImageUtil;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Small ring of compatible frame buffers used to compose photos away from the buffer that is on screen.
+ *
+ * A photo is composed into a free back buffer, then swapped in as the front buffer. The previous front buffer is
+ * retired and only becomes free again once the view has painted the new front buffer, so composition never draws
+ * into a buffer that may still be being painted. If the view stalls and does not present a new front buffer,
+ * composition waits for it, a retired buffer is never handed out early.
+ */
+public class FrameBuffers {
+
+    private static final long ACQUIRE_WARNING_INTERVAL = 5000;
+
+    private BufferedImage template;
+    private BlockingQueue<BufferedImage> free;
+    private AtomicReference<BufferedImage> front = new AtomicReference<>();
+    private List<BufferedImage> retired = new ArrayList<>();
+
+    /**
+     * Creates the buffer ring. The template is used as the first buffer, the rest are created to be compatible with it.
+     * @param template
+     * @param count Number of buffers, at least 2
+     */
+    public FrameBuffers(BufferedImage template, int count) {
+        if (count < 2) {
+            throw new RuntimeException("At least 2 frame buffers are required");
+        }
+
+        this.template = template;
+        free = new ArrayBlockingQueue<>(count);
+        free.add(template);
+
+        for (int i = 1; i < count; i++) {
+            free.add(ImageUtil.createCompatibleImage(template));
+        }
+    }
+
+    /**
+     * Returns an image that has the dimensions and layout of all buffers in this ring. The template is also one of the
+     * buffers in the ring, so only its dimensions and layout may be used. Draw into buffers taken with acquire().
+     * @return
+     */
+    public BufferedImage getTemplate() {
+        return template;
+    }
+
+    /**
+     * Takes a free back buffer to compose into, waiting until one is available. Waits for as long as the view takes
+     * to present the front buffer, a warning is logged every ACQUIRE_WARNING_INTERVAL while waiting. Interrupting
+     * the calling thread stops the wait.
+     * @return
+     * @throws InterruptedException
+     */
+    public BufferedImage acquire() throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+
+        while (true) {
+            BufferedImage buffer = free.poll(ACQUIRE_WARNING_INTERVAL, TimeUnit.MILLISECONDS);
+            if (buffer != null) {
+                return buffer;
+            }
+
+            Log.warning("Waiting for the view to present the front buffer, waited " +
+                    (System.currentTimeMillis() - startTime) + "ms");
+        }
+    }
+
+    /**
+     * Returns an acquired buffer that was not swapped in e.g. if composing into it failed.
+     * @param buffer
+     */
+    public void release(BufferedImage buffer) {
+        free.add(buffer);
+    }
+
+    /**
+     * Makes a composed buffer the front buffer. The previous front buffer is retired until the new one is presented.
+     * @param buffer
+     */
+    public void swap(BufferedImage buffer) {
+        BufferedImage previous = front.getAndSet(buffer);
+
+        if (previous != null) {
+            synchronized (retired) {
+                retired.add(previous);
+            }
+        }
+    }
+
+    /**
+     * Called by the view after it has painted an image. Once the current front buffer has been painted, none of the
+     * retired buffers can be on screen any more so they are returned to the free list.
+     * @param painted
+     */
+    public void presented(BufferedImage painted) {
+        if (painted == null || painted != front.get()) {
+            return;
+        }
+
+        synchronized (retired) {
+            free.addAll(retired);
+            retired.clear();
+        }
+    }
+
+    public BufferedImage getFront() {
+        return front.get();
+    }
+
+}
@@ -26,6 +26,9 @@ import java.awt.image.BufferedImage;
 
 /**
  * Holds the runtime data for the app 'model'. The View class uses this data to update what's displayed on screen.
+ *
+ * The data update threads write the data while the thread painting the view reads it, all access is synchronized so
+ * that the painting thread always sees complete, up to date values.
  */
 public class ModelData {
 
@@ -35,44 +38,67 @@ public class ModelData {
     private BufferedImage currentImage;
 
     private boolean changed = false;
+    private boolean imageChanged = false;
+    private int imageVersion = 0;
 
-    public boolean hasChanged() {
+    public synchronized boolean hasChanged() {
         return changed;
     }
 
-    public void resetChange() {
+    /**
+     * Checks whether the current image has changed since the last full repaint. Changes to the rest of the data only
+     * affect the widgets.
+     * @return
+     */
+    public synchronized boolean hasImageChanged() {
+        return imageChanged;
+    }
+
+    public synchronized void resetChange() {
         changed = false;
+        imageChanged = false;
     }
 
-    public void setWeather(Weather weather) {
+    public synchronized void setWeather(Weather weather) {
         this.weather = weather;
         changed = true;
     }
 
-    public void setCurrentImage(BufferedImage image) {
+    public synchronized void setCurrentImage(BufferedImage image) {
         currentImage = image;
+        imageVersion++;
+        imageChanged = true;
         changed = true;
     }
 
-    public void setDateTime(String date, String time) {
+    public synchronized void setDateTime(String date, String time) {
         this.date = date;
         this.time = time;
         changed = true;
     }
 
-    public BufferedImage getCurrentImage() {
+    /**
+     * Gets a number that changes every time the current image is set, even if the same buffer is set again after it
+     * has been redrawn.
+     * @return
+     */
+    public synchronized int getImageVersion() {
+        return imageVersion;
+    }
+
+    public synchronized BufferedImage getCurrentImage() {
         return currentImage;
     }
 
-    public String getDateString() {
+    public synchronized String getDateString() {
         return date;
     }
 
-    public String getTimeString() {
+    public synchronized String getTimeString() {
         return time;
     }
 
-    public Weather getWeather() {
+    public synchronized Weather getWeather() {
         return weather;
     }
 }
@@ -0,0 +1,91 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+
+package net.igorkromin.jphotoframe.ui;
+
+import net.igorkromin.jphotoframe.Log;
+
+import java.util.Locale;
+
+/**
+ * Collects paint timings for the view and logs a summary at a fixed interval. Full repaints, which draw a new photo,
+ * are kept apart from partial repaints of the widget areas.
+ */
+public class PaintStats {
+
+    private static final int FULL = 0;
+    private static final int PARTIAL = 1;
+
+    private long interval;
+    private long lastLog;
+
+    private int[] count = new int[2];
+    private long[] total = new long[2];
+    private long[] max = new long[2];
+
+    /**
+     * @param interval How often to log the stats in milliseconds, 0 to not collect stats at all
+     */
+    public PaintStats(int interval) {
+        this.interval = interval;
+        lastLog = System.currentTimeMillis();
+    }
+
+    public boolean isEnabled() {
+        return interval > 0;
+    }
+
+    /**
+     * Records the time taken by one paint and logs the summary if the log interval has passed.
+     * @param nanos
+     * @param fullPaint
+     */
+    public void record(long nanos, boolean fullPaint) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        int i = fullPaint ? FULL : PARTIAL;
+        count[i]++;
+        total[i] += nanos;
+        max[i] = Math.max(max[i], nanos);
+
+        long now = System.currentTimeMillis();
+        if (now - lastLog >= interval) {
+            Log.info("Paint stats: full " + format(FULL) + ", partial " + format(PARTIAL));
+
+            count = new int[2];
+            total = new long[2];
+            max = new long[2];
+            lastLog = now;
+        }
+    }
+
+    private String format(int i) {
+        if (count[i] == 0) {
+            return "count=0";
+        }
+
+        return String.format(Locale.ROOT, "count=%d avg=%.2fms max=%.2fms", count[i],
+                total[i] / (count[i] * 1000000.0), max[i] / 1000000.0);
+    }
+
+}
@@ -21,7 +21,11 @@
 package net.igorkromin.jphotoframe.ui;
 
 import net.igorkromin.jphotoframe.ConfigOptions;
-import net.igorkromin.jphotoframe.ImageDirectory;
+import net.igorkromin.jphotoframe.ImageSources;
+import net.igorkromin.jphotoframe.cache.CacheFile;
+import net.igorkromin.jphotoframe.cache.CacheKey;
+import net.igorkromin.jphotoframe.cache.CacheManager;
+import net.igorkromin.jphotoframe.cache.CacheWriter;
 import net.igorkromin.jphotoframe.img.BackgroundFiller;
 import net.igorkromin.jphotoframe.img.Factory;
 import net.igorkromin.jphotoframe.img.ImageScaler;
@@ -30,28 +34,43 @@ import net.igorkromin.jphotoframe.Log;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class PhotoUpdateThread extends DataUpdateThread {
 
-    private ImageDirectory imageDirectory;
-    private BufferedImage buffer;
+    private static final long LOAD_RETRY_DELAY = 1000;
+    private static final int CACHE_WRITE_BACKLOG = 2;
+
+    private static final int LOAD_FAILED = 0;
+    private static final int LOAD_CACHED = 1;
+    private static final int LOAD_COMPOSED = 2;
+
+    private ImageSources imageSources;
+    private CacheManager cacheManager = null;
+    private CacheWriter cacheWriter = null;
+    private FrameBuffers buffers;
     private BackgroundFiller filler;
     private ImageScaler scaler;
     private boolean doNotCache = false;
+    private boolean subsample = false;
+    private LookAheadThread lookAhead = null;
 
     /**
-     * Rectangle is used to sets the image drawing dimensions. All loaded images will be made to fit into this rectangle.
-     * All cached images will be sized to this rectangle.
+     * Frame buffers set the image drawing dimensions. All loaded images will be made to fit into these buffers.
+     * All cached images will be sized to these buffers.
      */
-    public PhotoUpdateThread(Controller controller, ConfigOptions config, ModelData data, int sleepTime, BufferedImage buffer) {
+    public PhotoUpdateThread(Controller controller, ConfigOptions config, ModelData data, int sleepTime, FrameBuffers buffers) {
         super(controller, config, data, sleepTime);
-        this.buffer = buffer;
+        this.buffers = buffers;
 
         if (config.isDisableCaching()) {
             Log.info("Image caching is disabled");
             doNotCache = true;
         }
 
+        subsample = config.isSubsampleImages();
+
         filler = Factory.getFiller(config);
         scaler = Factory.getScaler(config);
 
@@ -60,59 +79,163 @@ public class PhotoUpdateThread extends DataUpdateThread {
             doNotRun();
         }
         else {
-            filler.initialise(buffer, config);
-            scaler.initialise(buffer, config);
+            filler.initialise(buffers.getTemplate(), config);
+            scaler.initialise(buffers.getTemplate(), config);
 
             try {
-                imageDirectory = new ImageDirectory(config.getImageDirectory(), config.getCacheDirectory(), controller);
-                imageDirectory.startWatching();
+                BufferedImage template = buffers.getTemplate();
+                CacheKey cacheKey = new CacheKey(config, template.getWidth(), template.getHeight());
+
+                imageSources = new ImageSources(config, cacheKey, controller);
+
+                File cacheDir = imageSources.getCacheDirectory();
+                if (!doNotCache && cacheDir != null) {
+                    long maxBytes = config.getCacheMaxSize() * 1024L * 1024L;
+                    cacheManager = new CacheManager(cacheDir, maxBytes, config.getCacheMaxEntries());
+
+                    // clean up after images removed while not running as each image directory is listed, then keep
+                    // up with removals
+                    imageSources.setImageFileListener(cacheManager);
+
+                    cacheWriter = new CacheWriter(cacheManager, cacheDir, template, CACHE_WRITE_BACKLOG);
+                }
+
+                imageSources.startWatching();
             } catch (Exception e) {
                 Log.error("Could not start watching photo directory", e);
                 doNotRun();
+                return;
+            }
+
+            if (config.getLookAheadCount() > 0) {
+                Log.info("Photo look ahead enabled, composing up to " + config.getLookAheadCount() + " photos in advance");
+                lookAhead = new LookAheadThread(config.getLookAheadCount());
             }
         }
     }
 
+    @Override
+    public void beforeStart() {
+        if (cacheWriter != null) {
+            cacheWriter.start();
+        }
+
+        if (lookAhead != null) {
+            lookAhead.start();
+        }
+    }
+
     @Override
     public void doUpdate() {
+        // with look ahead the next photo is already composed, otherwise load and compose it now
+        if (lookAhead != null) {
+            BufferedImage frame = lookAhead.takeFrame();
 
-        File f = imageDirectory.nextFile();
-        File c = imageDirectory.getCachedImageFile(f);
+            if (frame != null) {
+                showFrame(frame);
+            }
+        }
+        else {
+            File f = imageSources.nextFile();
+            BufferedImage frame = acquireBuffer();
+
+            if (frame == null) {
+                return;
+            }
 
-        // display cached file if it exists
-        if (!doNotCache && imageDirectory.fileExists(c)) {
+            int loaded = composeFrame(f, frame);
+            if (loaded == LOAD_FAILED) {
+                buffers.release(frame);
+                return;
+            }
+
+            showFrame(frame);
+
+            // write cached image after the photo is shown
+            if (loaded == LOAD_COMPOSED) {
+                cacheFrame(f, frame);
+            }
+        }
+    }
+
+    private BufferedImage acquireBuffer() {
+        try {
+            return buffers.acquire();
+        }
+        catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    private void showFrame(BufferedImage frame) {
+        buffers.swap(frame);
+        getData().setCurrentImage(frame);
+        getController().requestUpdate();
+    }
+
+    /**
+     * Loads an image file and composes it into the target buffer. If a cached copy of the image exists, it is copied
+     * into the target buffer as is. If the cached copy can't be read, the image is composed from the original file.
+     * @param f Image file to load
+     * @param target Buffer to draw the background and scaled image into
+     * @return LOAD_FAILED if the image could not be loaded, LOAD_CACHED if the cached image was used, LOAD_COMPOSED if
+     * the image was loaded and composed from the original file
+     */
+    private int composeFrame(File f, BufferedImage target) {
+        File c = imageSources.getCachedImageFile(f);
+
+        // use cached file if it exists
+        if (!doNotCache && imageSources.fileExists(c)) {
             Log.verbose("Using cached image: " + c.getAbsolutePath());
 
-            // cached images are not rescaled, just set to the data model directly
-            BufferedImage cachedImage = silentLoad(c);
-            if (cachedImage != null) {
-                getData().setCurrentImage(cachedImage);
-                getController().requestUpdate();
+            if (CacheFile.read(c, target)) {
+                if (cacheManager != null) {
+                    cacheManager.touch(c);
+                }
+
+                return LOAD_CACHED;
             }
         }
-        // fall back to full res image + create a cached copy
-        else if (imageDirectory.fileExists(f)) {
-            BufferedImage image = silentLoad(f);
+
+        // fall back to full res image
+        if (imageSources.fileExists(f)) {
+            BufferedImage image = silentLoad(f, (subsample) ? scaler : null);
 
             if (image != null) {
-                filler.fillBackground(image);
-                scaler.drawScaledImage(image);
+                filler.fillBackground(image, target);
+                scaler.drawScaledImage(image, target);
 
-                getData().setCurrentImage(buffer);
-                getController().requestUpdate();
+                return LOAD_COMPOSED;
+            }
 
-                // write cached image
-                if (!doNotCache && c != null) {
-                    ImageUtil.writeImage(c, buffer);
-                }
+            // an interrupted load is not the file's fault
+            if (!Thread.currentThread().isInterrupted()) {
+                imageSources.quarantineFile(f);
             }
         }
+
+        return LOAD_FAILED;
     }
 
-    private BufferedImage silentLoad(File file) {
+    /**
+     * Queues a composed frame to be written to the cache in the background.
+     */
+    private void cacheFrame(File f, BufferedImage frame) {
+        File c = imageSources.getCachedImageFile(f);
+
+        if (cacheWriter != null && c != null) {
+            cacheWriter.submit(f, c, frame);
+        }
+    }
+
+    /**
+     * Loads an image ignoring any exceptions. If a scaler is given, the image is decoded at the size needed by that
+     * scaler, otherwise it is decoded at full resolution.
+     */
+    private BufferedImage silentLoad(File file, ImageScaler scaler) {
         BufferedImage img = null;
         try {
-            img = ImageUtil.readImage(file);
+            img = (scaler != null) ? ImageUtil.readImage(file, scaler) : ImageUtil.readImage(file);
         }
         catch (Exception e) {
             // ignore any load exceptions, they would be logged in the ImageUtil class
@@ -122,8 +245,89 @@ public class PhotoUpdateThread extends DataUpdateThread {
 
     @Override
     public void beforeExit() {
+        if (lookAhead != null) {
+            Log.verbose("Stopping photo look ahead");
+            lookAhead.interrupt();
+        }
+
         Log.verbose("Stopping directory watcher");
-        imageDirectory.stopWatching();
+        imageSources.stopWatching();
+
+        if (cacheWriter != null) {
+            Log.verbose("Stopping cache writer");
+            cacheWriter.stopWriting();
+        }
+
+        if (cacheManager != null) {
+            cacheManager.close();
+        }
+    }
+
+    /**
+     * Loads and composes photos ahead of time so that the photo update thread only has to swap in a ready image.
+     * Composed frames are queued, the queue size and the number of free frame buffers limit how far ahead this thread
+     * gets.
+     */
+    private class LookAheadThread extends Thread {
+
+        BlockingQueue<BufferedImage> frames;
+
+        public LookAheadThread(int count) {
+            frames = new ArrayBlockingQueue<>(count);
+        }
+
+        /**
+         * Waits for the next composed frame.
+         * @return null if interrupted while waiting
+         */
+        public BufferedImage takeFrame() {
+            try {
+                return frames.take();
+            }
+            catch (InterruptedException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void run() {
+            Log.verbose("Starting photo look ahead thread");
+
+            Controller controller = getController();
+
+            try {
+                while (!controller.isStopping()) {
+                    controller.waitIfPaused();
+
+                    File f = imageSources.nextFile();
+                    if (f == null) {
+                        sleep(getSleepTime());
+                        continue;
+                    }
+
+                    // each queued frame needs its own buffer
+                    BufferedImage frame = buffers.acquire();
+
+                    int loaded = composeFrame(f, frame);
+                    if (loaded == LOAD_FAILED) {
+                        buffers.release(frame);
+                        sleep(LOAD_RETRY_DELAY);
+                        continue;
+                    }
+
+                    if (loaded == LOAD_COMPOSED) {
+                        cacheFrame(f, frame);
+                    }
+
+                    frames.put(frame);
+                }
+            }
+            catch (InterruptedException e) {
+                // stopping
+            }
+
+            Log.verbose("Exiting photo look ahead thread");
+        }
     }
 
 }
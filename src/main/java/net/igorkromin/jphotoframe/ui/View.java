@@ -21,13 +21,16 @@
 package net.igorkromin.jphotoframe.ui;
 
 import net.igorkromin.jphotoframe.ConfigOptions;
+import net.igorkromin.jphotoframe.Log;
 import net.igorkromin.jphotoframe.img.ImageUtil;
 import net.igorkromin.jphotoframe.ui.widgets.Factory;
 import net.igorkromin.jphotoframe.ui.widgets.Widget;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.io.IOException;
 import java.util.List;
 
@@ -41,6 +44,17 @@ public class View extends JFrame {
     ConfigOptions config;
     ModelData data;
     List<Widget> widgets;
+    WidgetOverlay overlay;
+    FrameBuffers frameBuffers;
+    JPanel panel;
+    PaintStats paintStats;
+
+    // video memory copy of the current photo, see drawPhoto()
+    VolatileImage photoSurface = null;
+    int photoSurfaceVersion = -1;
+
+    // only set in the active render mode
+    RenderThread renderThread = null;
 
     public View(ConfigOptions config, ModelData data)
             throws IOException
@@ -51,6 +65,7 @@ public class View extends JFrame {
 
         this.config = config;
         this.data = data;
+        paintStats = new PaintStats(config.getPaintStatsInterval());
 
         setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
         setUndecorated(true);
@@ -60,9 +75,19 @@ public class View extends JFrame {
         contentPane.setCursor(null);
         contentPane.setOpaque(false);
 
-        JPanel panel = new JPanel() {
+        final boolean activeRendering = ConfigOptions.RENDER_MODE_ACTIVE.equals(config.getRenderMode());
+
+        panel = new JPanel() {
             @Override
             protected void paintComponent(Graphics g) {
+                // the render thread owns the screen in active mode, just let it know the screen needs drawing
+                if (activeRendering) {
+                    if (renderThread != null) {
+                        renderThread.requestRender();
+                    }
+                    return;
+                }
+
                 super.paintComponent(g);
                 drawScreen((Graphics2D) g);
             }
@@ -82,12 +107,37 @@ public class View extends JFrame {
         // stupid workaround for OS X losing focus
         setVisible(false);
         setVisible(true);
-    }
 
+        if (activeRendering) {
+            setIgnoreRepaint(true);
+            panel.setIgnoreRepaint(true);
+            createBufferStrategy(2);
+            renderThread = new RenderThread(getBufferStrategy(), config.getFrameRate());
+        }
+    }
 
+    /**
+     * Starts the render thread in the active render mode. Nothing is drawn in this mode until this is called.
+     */
+    public void startRendering() {
+        if (renderThread != null) {
+            Log.info("Using active rendering, frame rate=" + config.getFrameRate());
+            renderThread.start();
+        }
+    }
 
     @Override
     public void dispose() {
+        if (renderThread != null) {
+            renderThread.interrupt();
+            try {
+                renderThread.join();
+            }
+            catch (InterruptedException e) {
+                // carry on disposing
+            }
+        }
+
         if (config.isFullScreenWindow()) {
             device.setFullScreenWindow(null);
         }
@@ -95,10 +145,63 @@ public class View extends JFrame {
         super.dispose();
     }
 
+    /**
+     * Repaints the whole view.
+     */
+    public void repaintAll() {
+        if (renderThread != null) {
+            renderThread.requestRender();
+        }
+        else {
+            panel.repaint();
+        }
+    }
+
+    /**
+     * Repaints only the areas of the widgets that have changed since they were last painted. The widget overlay is
+     * updated on the event dispatch thread so that the widgets are not updated while they are being painted. In the
+     * active render mode the next frame picks up the widget changes.
+     */
+    public void repaintWidgets() {
+        if (renderThread != null) {
+            renderThread.requestRender();
+            return;
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (overlay == null) {
+                    panel.repaint();
+                    return;
+                }
+
+                Rectangle damage = overlay.update();
+
+                if (damage != null) {
+                    Log.verbose("Repainting widget area " + damage.x + "," + damage.y + " " +
+                            damage.width + "x" + damage.height);
+                    panel.repaint(damage);
+                }
+                else if (!data.hasImageChanged()) {
+                    data.resetChange();
+                }
+            }
+        });
+    }
+
     private void drawScreen(Graphics2D g) {
+        long startTime = System.nanoTime();
+
+        // get the version first, if the image changes in between it will just be uploaded again on the next paint
+        int imageVersion = data.getImageVersion();
         BufferedImage image = data.getCurrentImage();
         Rectangle rect = getBounds();
 
+        // only the area inside the clip is being repainted when just the widgets have changed
+        Rectangle clip = g.getClipBounds();
+        boolean fullPaint = (clip == null || clip.contains(0, 0, panel.getWidth(), panel.getHeight()));
+
         // if there is no image loaded, show the logo image instead (centered on screen)
         if (image == null) {
             // erase the screen first
@@ -112,19 +215,134 @@ public class View extends JFrame {
         }
         // have image so draw it 'as is' the photo update thread takes care of centering, background, etc
         else {
-            g.drawImage(image, 0, 0, null);
+            drawPhoto(g, image, imageVersion, fullPaint ? null : clip);
         }
 
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        // draw all of the screen widgets
-        if (widgets != null) {
-            for (Widget w : widgets) {
-                w.draw(g);
+        // bring the widget overlay up to date and draw it over the photo, widgets that changed outside of the clip
+        // have their area repainted separately
+        if (overlay != null) {
+            Rectangle damage = overlay.update();
+            if (damage != null && !fullPaint && !clip.contains(damage)) {
+                panel.repaint(damage);
             }
+
+            overlay.draw(g);
+        }
+
+        paintStats.record(System.nanoTime() - startTime, fullPaint);
+
+        // a partial repaint doesn't show a new image, a full repaint is already on its way for that
+        if (!fullPaint && data.hasImageChanged()) {
+            return;
         }
 
         data.resetChange();
+
+        // let the frame buffers know the photo is on screen so older buffers can be reused
+        if (frameBuffers != null) {
+            frameBuffers.presented(image);
+        }
+    }
+
+    /**
+     * Draws the photo, or the part of it inside the clip. When photo acceleration is on, each new photo is copied once
+     * into a VolatileImage and drawn from there, so repaints don't depend on the pipeline caching the buffer which the
+     * photo update thread keeps redrawing. If the video memory copy is lost while it is drawn, another repaint is
+     * requested to draw it again.
+     * @param g
+     * @param image
+     * @param imageVersion
+     * @param clip
+     */
+    private void drawPhoto(Graphics2D g, BufferedImage image, int imageVersion, Rectangle clip) {
+        if (config.isAcceleratePhotos()) {
+            VolatileImage surface = validatePhotoSurface(image, imageVersion);
+
+            if (surface != null) {
+                drawImage(g, surface, clip);
+
+                if (surface.contentsLost()) {
+                    Log.verbose("Photo surface contents lost, repainting");
+                    photoSurfaceVersion = -1;
+                    repaintAll();
+                }
+                return;
+            }
+        }
+
+        drawImage(g, image, clip);
+    }
+
+    /**
+     * Makes sure the video memory copy of the photo is usable and holds the current image, recreating and uploading it
+     * as needed.
+     * @param image
+     * @param imageVersion
+     * @return null if the copy could not be created
+     */
+    private VolatileImage validatePhotoSurface(BufferedImage image, int imageVersion) {
+        GraphicsConfiguration gc = panel.getGraphicsConfiguration();
+        if (gc == null) {
+            return null;
+        }
+
+        int state = (photoSurface == null) ? VolatileImage.IMAGE_INCOMPATIBLE : photoSurface.validate(gc);
+
+        if (state == VolatileImage.IMAGE_INCOMPATIBLE || photoSurface.getWidth() != image.getWidth() ||
+                photoSurface.getHeight() != image.getHeight())
+        {
+            if (photoSurface != null) {
+                photoSurface.flush();
+            }
+
+            try {
+                photoSurface = gc.createCompatibleVolatileImage(image.getWidth(), image.getHeight());
+            }
+            catch (Exception e) {
+                Log.error("Could not create photo surface, drawing photos directly", e);
+                photoSurface = null;
+                return null;
+            }
+
+            photoSurface.validate(gc);
+            Log.verbose("Created photo surface " + image.getWidth() + "x" + image.getHeight() + " accelerated=" +
+                    photoSurface.getCapabilities().isAccelerated());
+            photoSurfaceVersion = -1;
+        }
+        else if (state == VolatileImage.IMAGE_RESTORED) {
+            photoSurfaceVersion = -1;
+        }
+
+        if (photoSurfaceVersion != imageVersion) {
+            Graphics2D sg = photoSurface.createGraphics();
+            try {
+                sg.setComposite(AlphaComposite.Src);
+                sg.drawImage(image, 0, 0, null);
+            }
+            finally {
+                sg.dispose();
+            }
+            photoSurfaceVersion = imageVersion;
+        }
+
+        return photoSurface;
+    }
+
+    /**
+     * Draws an image at the origin, only copying the part inside the clip if there is one.
+     * @param g
+     * @param image
+     * @param clip
+     */
+    private static void drawImage(Graphics2D g, Image image, Rectangle clip) {
+        if (clip == null) {
+            g.drawImage(image, 0, 0, null);
+        }
+        else {
+            int x2 = clip.x + clip.width;
+            int y2 = clip.y + clip.height;
+            g.drawImage(image, clip.x, clip.y, x2, y2, clip.x, clip.y, x2, y2, null);
+        }
     }
 
     public BufferedImage getImageBuffer() {
@@ -132,8 +350,139 @@ public class View extends JFrame {
         return getGraphicsConfiguration().createCompatibleImage(rect.width, rect.height);
     }
 
+    /**
+     * Creates a ring of frame buffers compatible with this view. The view reports back to the ring every time it paints
+     * a photo.
+     * @param count
+     * @return
+     */
+    public FrameBuffers createFrameBuffers(int count) {
+        frameBuffers = new FrameBuffers(getImageBuffer(), count);
+        return frameBuffers;
+    }
+
     public void loadWidgets() {
         widgets = Factory.makeWidgetsFromLayout(config.getLayoutFile(), data, getBounds());
+        overlay = new WidgetOverlay(panel, widgets);
+
+        // the render thread owns the widgets in the active render mode
+        if (renderThread != null) {
+            overlay.setPaintThread(renderThread);
+        }
+    }
+
+    /**
+     * Draws frames for the active render mode. A frame is drawn whenever one is requested or, if a frame rate is set,
+     * on a fixed schedule. Requests made while a frame is pending are merged into that frame.
+     */
+    private class RenderThread extends Thread {
+
+        private static final long ERROR_RETRY_DELAY = 1000;
+
+        private BufferStrategy strategy;
+        private long framePeriod;
+        private boolean renderRequested = true;
+
+        /**
+         * @param strategy
+         * @param frameRate Frames per second, 0 to only draw frames on request
+         */
+        RenderThread(BufferStrategy strategy, int frameRate) {
+            super("Render");
+            this.strategy = strategy;
+            framePeriod = (frameRate > 0) ? 1000000000L / frameRate : 0;
+        }
+
+        synchronized void requestRender() {
+            renderRequested = true;
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            long nextFrame = System.nanoTime();
+
+            try {
+                while (!isInterrupted()) {
+                    if (framePeriod > 0) {
+                        nextFrame = waitForFrame(nextFrame);
+                    }
+                    else {
+                        waitForRequest();
+                    }
+
+                    // a bad frame must not stop rendering, the next frame tries again
+                    try {
+                        render();
+                    }
+                    catch (Exception e) {
+                        Log.error("Error rendering frame", e);
+                        Thread.sleep(ERROR_RETRY_DELAY);
+                        requestRender();
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // stopping
+            }
+
+            Log.verbose("Render thread stopped");
+        }
+
+        private synchronized void waitForRequest() throws InterruptedException {
+            while (!renderRequested) {
+                wait();
+            }
+            renderRequested = false;
+        }
+
+        /**
+         * Sleeps until the next frame is due. Frames that were missed are skipped rather than drawn late one after
+         * another.
+         * @param nextFrame
+         * @return time the frame after this one is due
+         */
+        private long waitForFrame(long nextFrame) throws InterruptedException {
+            long delay = nextFrame - System.nanoTime();
+            if (delay > 0) {
+                Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+            }
+
+            synchronized (this) {
+                renderRequested = false;
+            }
+
+            long now = System.nanoTime();
+            nextFrame += framePeriod;
+            if (nextFrame < now) {
+                nextFrame = now + framePeriod;
+            }
+
+            return nextFrame;
+        }
+
+        /**
+         * Draws one frame into the back buffer and shows it, drawing it again if the buffer contents were lost.
+         */
+        private void render() {
+            do {
+                do {
+                    Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+                    try {
+                        drawScreen(g);
+                    }
+                    finally {
+                        g.dispose();
+                    }
+                }
+                while (strategy.contentsRestored());
+
+                strategy.show();
+            }
+            while (strategy.contentsLost());
+
+            Toolkit.getDefaultToolkit().sync();
+        }
     }
 
 }
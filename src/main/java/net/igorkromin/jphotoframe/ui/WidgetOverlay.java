@@ -0,0 +1,182 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+
+package net.igorkromin.jphotoframe.ui;
+
+import net.igorkromin.jphotoframe.Log;
+import net.igorkromin.jphotoframe.ui.widgets.Widget;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Retained layer holding the rendered screen widgets.
+ *
+ * The widgets are drawn into a translucent image the size of the view. Only the areas of widgets whose model data has
+ * changed are cleared and redrawn, the layer is then composited over the photo with a single image draw. This keeps
+ * the cost of a repaint the same no matter how many widgets the layout has.
+ *
+ * The overlay is owned by the thread that paints the view. This is the event dispatch thread unless another thread
+ * takes over painting, see setPaintThread(), e.g. the render thread in the active render mode. Updating or drawing the
+ * overlay from any other thread throws an exception, since the widgets are not thread safe.
+ */
+public class WidgetOverlay {
+
+    private Component target;
+    private List<Widget> widgets;
+    private BufferedImage image = null;
+    private Thread paintThread = null;
+
+    /**
+     * @param target Component the overlay is drawn onto, the overlay is kept the same size as this component
+     * @param widgets
+     */
+    public WidgetOverlay(Component target, List<Widget> widgets) {
+        this.target = target;
+        this.widgets = widgets;
+    }
+
+    /**
+     * Hands the overlay over to a thread other than the event dispatch thread. Must be called before that thread
+     * starts.
+     * @param paintThread
+     */
+    public void setPaintThread(Thread paintThread) {
+        this.paintThread = paintThread;
+    }
+
+    /**
+     * Redraws the areas of the widgets that have changed since they were last drawn. The whole layer is redrawn if the
+     * target component has changed size.
+     * @return area of the layer that was redrawn, null if nothing has changed
+     */
+    public Rectangle update() {
+        checkThread();
+
+        int width = target.getWidth();
+        int height = target.getHeight();
+
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        Rectangle damage;
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            Log.verbose("Creating widget overlay " + width + "x" + height);
+            image = target.getGraphicsConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+            damage = new Rectangle(0, 0, width, height);
+        }
+        else {
+            damage = getDamage();
+        }
+
+        if (damage != null) {
+            redraw(damage);
+        }
+
+        return damage;
+    }
+
+    /**
+     * Composites the layer over whatever has already been drawn. Only the part of the layer inside the clip is drawn.
+     * @param graphics
+     */
+    public void draw(Graphics2D graphics) {
+        checkThread();
+
+        if (image == null) {
+            return;
+        }
+
+        Rectangle clip = graphics.getClipBounds();
+        if (clip == null) {
+            graphics.drawImage(image, 0, 0, null);
+        }
+        else {
+            int x2 = clip.x + clip.width;
+            int y2 = clip.y + clip.height;
+            graphics.drawImage(image, clip.x, clip.y, x2, y2, clip.x, clip.y, x2, y2, null);
+        }
+    }
+
+    private void checkThread() {
+        boolean owner = (paintThread != null) ? Thread.currentThread() == paintThread :
+                SwingUtilities.isEventDispatchThread();
+
+        if (!owner) {
+            throw new RuntimeException("Widget overlay used from " + Thread.currentThread().getName() +
+                    ", which is not the thread painting the view");
+        }
+    }
+
+    private Rectangle getDamage() {
+        Graphics2D g = createGraphics();
+        Rectangle damage = null;
+
+        try {
+            for (Widget w : widgets) {
+                Rectangle r = w.getDamage(g);
+
+                if (r != null) {
+                    damage = (damage == null) ? r : damage.union(r);
+                }
+            }
+        }
+        finally {
+            g.dispose();
+        }
+
+        return damage;
+    }
+
+    /**
+     * Clears the damaged area of the layer and draws the widgets back into it. Widgets outside of the damaged area skip
+     * drawing themselves.
+     * @param damage
+     */
+    private void redraw(Rectangle damage) {
+        Graphics2D g = createGraphics();
+
+        try {
+            g.clip(damage);
+
+            g.setComposite(AlphaComposite.Clear);
+            g.fill(damage);
+            g.setComposite(AlphaComposite.SrcOver);
+
+            for (Widget w : widgets) {
+                w.draw(g);
+            }
+        }
+        finally {
+            g.dispose();
+        }
+    }
+
+    private Graphics2D createGraphics() {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return g;
+    }
+
+}
@@ -95,4 +95,23 @@ public class Anchor extends Widget {
         graphics2.dispose();
     }
 
+    @Override
+    public Rectangle getDamage(Graphics2D graphics) {
+        Rectangle damage = null;
+
+        for (Transformable t : children) {
+            Rectangle r = t.getDamage(graphics);
+
+            if (r != null) {
+                damage = (damage == null) ? r : damage.union(r);
+            }
+        }
+
+        if (damage != null) {
+            damage.translate(anchorX, anchorY);
+        }
+
+        return damage;
+    }
+
 }
@@ -21,43 +21,55 @@
 package net.igorkromin.jphotoframe.ui.widgets;
 
 import java.awt.*;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Caches fonts used by Widgets
+ * Caches fonts used by Widgets. Fonts are keyed on their name, style and size and can be requested from any thread.
+ * Glyphs for the cached fonts are kept by GlyphCache.
  */
 public class FontManager {
 
     private static final String WEATHER_ICONS_FONT_FILE = "/weathericons-regular-webfont.ttf";
 
-    private static HashMap<String, Font> fonts = new HashMap<>();
+    private static ConcurrentHashMap<FontKey, Font> fonts = new ConcurrentHashMap<>();
     private static Font weatherFont = null;
 
     public static Font getFont(String name, int style, int size) {
+        FontKey key = new FontKey(name, style, size);
+        Font font = fonts.get(key);
 
-        String key = name + style + size;
-        Font font;
-
-        if (fonts.containsKey(key)) {
-            font = fonts.get(key);
-        }
-        else {
-            font = new Font(name, style, size);
-            fonts.put(key, font);
+        if (font == null) {
+            font = cache(key, new Font(name, style, size));
         }
 
         return font;
     }
 
+    /**
+     * Gets the internal weather icons font at the given size. The font file is only loaded once, each size is derived
+     * from it.
+     * @param size
+     * @return
+     */
     public static Font getWeatherFont(int size) {
+        FontKey key = new FontKey(WEATHER_ICONS_FONT_FILE, Font.PLAIN, size);
+        Font font = fonts.get(key);
+
+        if (font == null) {
+            font = cache(key, loadWeatherFont().deriveFont((float) size));
+        }
+
+        return font;
+    }
+
+    private static synchronized Font loadWeatherFont() {
         if (weatherFont != null) {
-            return  weatherFont;
+            return weatherFont;
         }
 
         try {
             weatherFont = Font.createFont(Font.TRUETYPE_FONT,
-                    FontManager.class.getResourceAsStream(WEATHER_ICONS_FONT_FILE))
-                    .deriveFont((float) size);
+                    FontManager.class.getResourceAsStream(WEATHER_ICONS_FONT_FILE));
 
             return weatherFont;
         }
@@ -66,4 +78,46 @@ public class FontManager {
         }
     }
 
+    /**
+     * Adds a font to the cache unless another thread has already added one for the same key.
+     * @param key
+     * @param font
+     * @return the cached font
+     */
+    private static Font cache(FontKey key, Font font) {
+        Font existing = fonts.putIfAbsent(key, font);
+        return (existing != null) ? existing : font;
+    }
+
+    /**
+     * Font cache key.
+     */
+    private static final class FontKey {
+
+        private final String name;
+        private final int style;
+        private final int size;
+
+        FontKey(String name, int style, int size) {
+            this.name = name;
+            this.style = style;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FontKey)) {
+                return false;
+            }
+
+            FontKey k = (FontKey) o;
+            return style == k.style && size == k.size && name.equals(k.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return (name.hashCode() * 31 + style) * 31 + size;
+        }
+    }
+
 }
@@ -0,0 +1,219 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+
+package net.igorkromin.jphotoframe.ui.widgets;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the glyphs of a font so that text can be assembled from cached pieces instead of being laid out and
+ * rasterised again every time it changes. There is one cache per font, shared by all widgets using that font.
+ *
+ * Each glyph keeps its outline shape and advance, plus pre-rasterised sprites of its outline stroke and its fill for
+ * each colour and outline width it has been drawn with. Sprites are only usable when text is drawn without rotation or
+ * scaling, otherwise the outline shapes are drawn.
+ *
+ * All methods can be called from any thread.
+ */
+public class GlyphCache {
+
+    private static ConcurrentHashMap<Font, GlyphCache> caches = new ConcurrentHashMap<>();
+
+    private Font font;
+    private FontRenderContext frc = new FontRenderContext(null, true, false);
+    private ConcurrentHashMap<Integer, Glyph> glyphs = new ConcurrentHashMap<>();
+
+    private GlyphCache(Font font) {
+        this.font = font;
+    }
+
+    /**
+     * Gets the glyph cache for a font.
+     * @param font
+     * @return
+     */
+    public static GlyphCache getCache(Font font) {
+        GlyphCache cache = caches.get(font);
+
+        if (cache == null) {
+            cache = new GlyphCache(font);
+            GlyphCache existing = caches.putIfAbsent(font, cache);
+            if (existing != null) {
+                cache = existing;
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * Gets the glyph for a single character, laying it out the first time the character is requested.
+     * @param codePoint
+     * @return
+     */
+    public Glyph getGlyph(int codePoint) {
+        Glyph glyph = glyphs.get(codePoint);
+
+        if (glyph == null) {
+            GlyphVector gv = font.createGlyphVector(frc, new String(Character.toChars(codePoint)));
+
+            glyph = new Glyph(gv.getOutline(), (float) gv.getGlyphPosition(gv.getNumGlyphs()).getX());
+            Glyph existing = glyphs.putIfAbsent(codePoint, glyph);
+            if (existing != null) {
+                glyph = existing;
+            }
+        }
+
+        return glyph;
+    }
+
+    /**
+     * Outline and sprites of a single glyph. Coordinates are relative to the glyph origin on the baseline.
+     */
+    public static class Glyph {
+
+        private Shape outline;
+        private float advance;
+        private ConcurrentHashMap<Long, Sprite> outlineSprites = new ConcurrentHashMap<>();
+        private ConcurrentHashMap<Integer, Sprite> fillSprites = new ConcurrentHashMap<>();
+
+        private Glyph(Shape outline, float advance) {
+            this.outline = outline;
+            this.advance = advance;
+        }
+
+        public Shape getOutline() {
+            return outline;
+        }
+
+        public Rectangle2D getBounds() {
+            return outline.getBounds2D();
+        }
+
+        /**
+         * Checks whether the glyph has nothing to draw, i.e. it is white space.
+         * @return
+         */
+        public boolean isBlank() {
+            return outline.getBounds2D().isEmpty();
+        }
+
+        public float getAdvance() {
+            return advance;
+        }
+
+        /**
+         * Gets the sprite of this glyph's outline stroked with a round stroke of the given width and colour.
+         * @param width
+         * @param colour
+         * @return
+         */
+        public Sprite getOutlineSprite(int width, Color colour) {
+            long key = ((long) width << 32) | (colour.getRGB() & 0xffffffffL);
+            Sprite sprite = outlineSprites.get(key);
+
+            if (sprite == null) {
+                sprite = new Sprite(outline, colour, new BasicStroke(width, BasicStroke.CAP_ROUND,
+                        BasicStroke.JOIN_ROUND), (width + 1) / 2 + 1);
+                Sprite existing = outlineSprites.putIfAbsent(key, sprite);
+                if (existing != null) {
+                    sprite = existing;
+                }
+            }
+
+            return sprite;
+        }
+
+        /**
+         * Gets the sprite of this glyph filled with the given colour.
+         * @param colour
+         * @return
+         */
+        public Sprite getFillSprite(Color colour) {
+            int key = colour.getRGB();
+            Sprite sprite = fillSprites.get(key);
+
+            if (sprite == null) {
+                sprite = new Sprite(outline, colour, null, 1);
+                Sprite existing = fillSprites.putIfAbsent(key, sprite);
+                if (existing != null) {
+                    sprite = existing;
+                }
+            }
+
+            return sprite;
+        }
+    }
+
+    /**
+     * Pre-rasterised glyph image. The image is drawn at the glyph origin plus the sprite offset.
+     */
+    public static class Sprite {
+
+        private BufferedImage image;
+        private int x;
+        private int y;
+
+        /**
+         * Rasterises a glyph outline.
+         * @param outline
+         * @param colour
+         * @param stroke Stroke to draw the outline with, null to fill the outline
+         * @param pad Number of pixels to pad the outline bounds by
+         */
+        private Sprite(Shape outline, Color colour, Stroke stroke, int pad) {
+            Rectangle bounds = outline.getBounds();
+            bounds.grow(pad, pad);
+
+            x = bounds.x;
+            y = bounds.y;
+            image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+
+            Graphics2D g = image.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g.translate(-x, -y);
+                g.setColor(colour);
+
+                if (stroke != null) {
+                    g.setStroke(stroke);
+                    g.draw(outline);
+                }
+                else {
+                    g.fill(outline);
+                }
+            }
+            finally {
+                g.dispose();
+            }
+        }
+
+        public void draw(Graphics2D graphics, int glyphX, int glyphY) {
+            graphics.drawImage(image, glyphX + x, glyphY + y, null);
+        }
+    }
+
+}
@@ -27,8 +27,8 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.awt.*;
-import java.awt.font.FontRenderContext;
-import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 
 import static net.igorkromin.jphotoframe.ui.widgets.Factory.*;
 
@@ -49,6 +49,9 @@ import static net.igorkromin.jphotoframe.ui.widgets.Factory.*;
  *  - outlineWidth : width of the outline, values larger than 1 will typically exceed draw bounds
  *  - useInternalWeatherFont : whether to use the internal weather font to rendering this widget
  *  - transform : transformation to apply to this text
+ *
+ * The text is assembled from glyphs shared through the GlyphCache, so a change of text doesn't lay out or rasterise
+ * glyphs that have been drawn before.
  */
 public class Text extends Transformable {
 
@@ -60,13 +63,15 @@ public class Text extends Transformable {
     private String text = null;
 
     private Rectangle textBounds = null;
-    private Shape shape = null;
+    private GlyphCache.Glyph[] glyphs = null;
+    private float[] glyphX = null;
 
     String dataSource = null;
     String textFormat = DEFAULT_FORMAT;
     Color colour = DEFAULT_COLOUR;
     Color outlineColour = DEFAULT_OUTLINE_COLOUR;
     Stroke outlineStroke = null;
+    int outlineWidth = DEFAULT_OUTLINE_WIDTH;
     Font font;
 
     private Text(JSONObject transform, Rectangle drawAreaBounds) {
@@ -78,7 +83,6 @@ public class Text extends Transformable {
 
         this.data = data;
 
-        int width = DEFAULT_OUTLINE_WIDTH;
         String fontName = DEFAULT_FONT_NAME;
         int fontSize = DEFAULT_FONT_SIZE;
         boolean useInternalWeatherFont = false;
@@ -125,7 +129,7 @@ public class Text extends Transformable {
 
             // - outlineWidth
             if (text.has(KEY_OUTLINE_WIDTH)) {
-                width = text.getInt(KEY_OUTLINE_WIDTH);
+                outlineWidth = text.getInt(KEY_OUTLINE_WIDTH);
             }
 
             // - useInternalWeatherFont
@@ -134,7 +138,7 @@ public class Text extends Transformable {
             }
         }
 
-        outlineStroke = new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        outlineStroke = new BasicStroke(outlineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
 
         if (useInternalWeatherFont) {
             font = FontManager.getWeatherFont(fontSize);
@@ -153,12 +157,9 @@ public class Text extends Transformable {
                 return textBounds;
             }
 
-            FontRenderContext frc = graphics.getFontRenderContext();
-            GlyphVector gv = font.createGlyphVector(frc, newText);
-
-            shape = gv.getOutline();
-            textBounds = shape.getBounds();
+            layout(newText);
             text = newText;
+            setDamaged();
 
             return textBounds;
         }
@@ -202,16 +203,113 @@ public class Text extends Transformable {
 
         graphics.translate(-textBounds.x, -textBounds.y);
 
+        // sprites can only be used if they would be drawn 'as is'
+        AffineTransform transform = graphics.getTransform();
+        if ((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0) {
+            drawSprites(graphics);
+            return;
+        }
+
         // draw outline
         Stroke originalStroke = graphics.getStroke();
         graphics.setStroke(outlineStroke);
         graphics.setColor(outlineColour);
-        graphics.draw(shape);
+        for (int i = 0; i < glyphs.length; i++) {
+            drawGlyph(graphics, i, false);
+        }
         graphics.setStroke(originalStroke);
 
         // draw text
         graphics.setColor(colour);
-        graphics.fill(shape);
+        for (int i = 0; i < glyphs.length; i++) {
+            drawGlyph(graphics, i, true);
+        }
+    }
+
+    /**
+     * Draws the text from the cached glyph sprites. All of the outlines are drawn before the fills so that the outline
+     * of a glyph never covers its neighbour.
+     * @param graphics
+     */
+    private void drawSprites(Graphics2D graphics) {
+        for (int i = 0; i < glyphs.length; i++) {
+            if (!glyphs[i].isBlank()) {
+                glyphs[i].getOutlineSprite(outlineWidth, outlineColour).draw(graphics, Math.round(glyphX[i]), 0);
+            }
+        }
+
+        for (int i = 0; i < glyphs.length; i++) {
+            if (!glyphs[i].isBlank()) {
+                glyphs[i].getFillSprite(colour).draw(graphics, Math.round(glyphX[i]), 0);
+            }
+        }
+    }
+
+    private void drawGlyph(Graphics2D graphics, int i, boolean fill) {
+        if (glyphs[i].isBlank()) {
+            return;
+        }
+
+        AffineTransform transform = graphics.getTransform();
+        graphics.translate(glyphX[i], 0);
+
+        if (fill) {
+            graphics.fill(glyphs[i].getOutline());
+        }
+        else {
+            graphics.draw(glyphs[i].getOutline());
+        }
+
+        graphics.setTransform(transform);
+    }
+
+    /**
+     * Lays out the text one glyph after another along the baseline and works out the text bounds.
+     * @param newText
+     */
+    private void layout(String newText) {
+        GlyphCache cache = GlyphCache.getCache(font);
+
+        glyphs = new GlyphCache.Glyph[newText.codePointCount(0, newText.length())];
+        glyphX = new float[glyphs.length];
+
+        Rectangle2D bounds = null;
+        float x = 0;
+        int i = 0;
+
+        for (int offset = 0; offset < newText.length(); ) {
+            int codePoint = newText.codePointAt(offset);
+            offset += Character.charCount(codePoint);
+
+            GlyphCache.Glyph glyph = cache.getGlyph(codePoint);
+            glyphs[i] = glyph;
+            glyphX[i] = x;
+
+            if (!glyph.isBlank()) {
+                Rectangle2D b = glyph.getBounds();
+                b.setRect(b.getX() + x, b.getY(), b.getWidth(), b.getHeight());
+                bounds = (bounds == null) ? b : bounds.createUnion(b);
+            }
+
+            x += glyph.getAdvance();
+            i++;
+        }
+
+        textBounds = (bounds == null) ? new Rectangle(0, 0, Math.round(x), 0) : bounds.getBounds();
+    }
+
+    /**
+     * Text is painted with its outline centred on the glyph edges so half of the outline width falls outside of the
+     * text bounds.
+     * @param drawBounds
+     * @return
+     */
+    @Override
+    protected Rectangle getPaintBounds(Rectangle drawBounds) {
+        Rectangle r = super.getPaintBounds(drawBounds);
+        int pad = (outlineWidth + 1) / 2;
+        r.grow(pad, pad);
+        return r;
     }
 
     public void overwriteDataSource(String dataSource) {
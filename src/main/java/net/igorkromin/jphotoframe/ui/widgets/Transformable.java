@@ -24,6 +24,7 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 
 import static net.igorkromin.jphotoframe.ui.widgets.Factory.*;
 
@@ -35,6 +36,9 @@ import static net.igorkromin.jphotoframe.ui.widgets.Factory.*;
  *  - offset : two-integer array specifying the offset in pixels relative to the origin
  *  - rotate : degrees rotation around the origin point
  *  - showBounds : whether to show the drawing boundary box or not
+ *
+ * The area painted on screen is remembered so that a change in the model data only needs the old and new areas to be
+ * repainted, see getDamage().
  */
 public abstract class Transformable extends Widget {
 
@@ -49,6 +53,8 @@ public abstract class Transformable extends Widget {
     private double radsRotation = DEFAULT_ROTATION;
 
     private Rectangle drawBounds;
+    private Rectangle paintedBounds = null;
+    private boolean damaged = true;
 
     public Transformable(JSONObject json, Rectangle drawAreaBounds) {
         super(json, drawAreaBounds);
@@ -89,21 +95,23 @@ public abstract class Transformable extends Widget {
     }
 
     public void draw(Graphics2D graphics) {
-        // copy the Graphics2D object to avoid incompatible state changes
-        Graphics2D graphics2 = (Graphics2D) graphics.create();
+        drawBounds = syncModelToBounds(graphics);
 
-        drawBounds = syncModelToBounds(graphics2);
+        Rectangle screenBounds = getScreenBounds(drawBounds);
+        Rectangle clip = graphics.getClipBounds();
 
-        if (drawBounds != null) {
-            // translation
-            int x = (originX == 0) ? offsetX : -drawBounds.width + offsetX;
-            int y = (originY == 0) ? offsetY : -drawBounds.height + offsetY;
-            graphics2.translate(x, y);
+        // nothing to do if this widget is outside of the area being repainted, it stays damaged until it is painted
+        if (clip != null && !intersects(clip, screenBounds) && !intersects(clip, paintedBounds)) {
+            return;
+        }
 
-            // rotation
-            int rx = ((originX == 0) ? 0 : drawBounds.width);
-            int ry = ((originY == 0) ? 0 : drawBounds.height);
-            graphics2.rotate(radsRotation, rx, ry);
+        paintedBounds = screenBounds;
+        damaged = false;
+
+        if (drawBounds != null) {
+            // copy the Graphics2D object to avoid incompatible state changes
+            Graphics2D graphics2 = (Graphics2D) graphics.create();
+            graphics2.transform(getTransform(drawBounds));
 
             if (showBounds) {
                 graphics2.setColor(Color.yellow);
@@ -116,9 +124,87 @@ public abstract class Transformable extends Widget {
             }
 
             drawTransformed(graphics2);
+            graphics2.dispose();
+        }
+    }
+
+    /**
+     * Works out the area that has to be repainted for this widget to show its current model data. This is the union of
+     * the area painted last time and the area the widget will paint now, in the coordinates of the graphics object
+     * the widget is drawn with.
+     * @param graphics
+     * @return null if the widget is already showing its current model data
+     */
+    @Override
+    public Rectangle getDamage(Graphics2D graphics) {
+        Rectangle screenBounds = getScreenBounds(syncModelToBounds(graphics));
+
+        if (!damaged && (screenBounds == null ? paintedBounds == null : screenBounds.equals(paintedBounds))) {
+            return null;
+        }
+
+        if (paintedBounds == null) {
+            return screenBounds;
+        }
+        else if (screenBounds == null) {
+            return new Rectangle(paintedBounds);
+        }
+
+        return paintedBounds.union(screenBounds);
+    }
+
+    /**
+     * Marks this widget as needing a repaint. Called by widgets whenever their model data changes the way they are
+     * drawn.
+     */
+    protected void setDamaged() {
+        damaged = true;
+    }
+
+    /**
+     * Returns the area the widget paints into before it is transformed. The default is the draw bounds plus a pixel
+     * around the edges for antialiasing.
+     * @param drawBounds
+     * @return
+     */
+    protected Rectangle getPaintBounds(Rectangle drawBounds) {
+        Rectangle r = new Rectangle(0, 0, drawBounds.width, drawBounds.height);
+        r.grow(1, 1);
+        return r;
+    }
+
+    private Rectangle getScreenBounds(Rectangle drawBounds) {
+        if (drawBounds == null) {
+            return null;
+        }
+
+        Rectangle paintBounds = getPaintBounds(drawBounds);
+        if (showBounds) {
+            paintBounds = paintBounds.union(new Rectangle(-ORIGIN_DISPLACE - 1, -ORIGIN_DISPLACE - 1,
+                    drawBounds.width + ORIGIN_WIDTH + 2, drawBounds.height + ORIGIN_WIDTH + 2));
         }
 
-        graphics2.dispose();
+        return getTransform(drawBounds).createTransformedShape(paintBounds).getBounds();
+    }
+
+    private AffineTransform getTransform(Rectangle drawBounds) {
+        AffineTransform transform = new AffineTransform();
+
+        // translation
+        int x = (originX == 0) ? offsetX : -drawBounds.width + offsetX;
+        int y = (originY == 0) ? offsetY : -drawBounds.height + offsetY;
+        transform.translate(x, y);
+
+        // rotation
+        int rx = ((originX == 0) ? 0 : drawBounds.width);
+        int ry = ((originY == 0) ? 0 : drawBounds.height);
+        transform.rotate(radsRotation, rx, ry);
+
+        return transform;
+    }
+
+    private static boolean intersects(Rectangle clip, Rectangle bounds) {
+        return bounds != null && clip.intersects(bounds);
     }
 
     public abstract Rectangle syncModelToBounds(Graphics2D graphics);
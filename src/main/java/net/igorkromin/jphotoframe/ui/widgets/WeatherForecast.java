@@ -198,6 +198,7 @@ public class WeatherForecast extends Transformable {
 
             bounds.setBounds(0,0, width, height);
             lastUpdate = weather.getUpdateTime();
+            setDamaged();
 
             return bounds;
         }
@@ -260,6 +261,37 @@ public class WeatherForecast extends Transformable {
         }
     }
 
+    /**
+     * Forecast items can overlap or overhang the widget bounds depending on the gap settings, so the painted area is
+     * the union of the areas painted by each item.
+     * @param drawBounds
+     * @return
+     */
+    @Override
+    protected Rectangle getPaintBounds(Rectangle drawBounds) {
+        Rectangle r = super.getPaintBounds(drawBounds);
+        int tx = 0;
+        int ty = 0;
+
+        for (Text text : drawList) {
+            Rectangle item = text.getPaintBounds(text.getTextBounds());
+            item.translate(tx, ty);
+            r.add(item);
+
+            switch (orientation) {
+                case ORIENT_HORZ:
+                    tx += (text.getTextBounds().width * itemBoundScalar) + itemGap;
+                    break;
+
+                case ORIENT_VERT:
+                    ty += (text.getTextBounds().height * itemBoundScalar) + itemGap;
+                    break;
+            }
+        }
+
+        return r;
+    }
+
     @Override
     public void drawTransformed(Graphics2D graphics) {
         int tx = 0;
@@ -65,4 +65,14 @@ public abstract class Widget {
 
     public abstract void draw(Graphics2D graphics);
 
+    /**
+     * Works out the area that has to be repainted for this widget to show its current model data. Widgets that don't
+     * track what they have painted report their whole draw area.
+     * @param graphics Graphics object compatible with the one the widget is drawn with
+     * @return null if nothing needs to be repainted
+     */
+    public Rectangle getDamage(Graphics2D graphics) {
+        return (bounds == null) ? null : new Rectangle(bounds);
+    }
+
 }
@@ -0,0 +1,7 @@
+#!/bin/sh
+if [ -z "$1" ];
+then
+    java -Xms128m -Xmx256m -jar jphotoframe.jar -precache config.properties
+else
+    java -Xms128m -Xmx256m -jar jphotoframe.jar -precache "$1"
+fi
\ No newline at end of file
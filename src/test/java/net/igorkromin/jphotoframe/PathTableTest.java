@@ -0,0 +1,111 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+
+package net.igorkromin.jphotoframe;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathTableTest {
+
+    // enough paths to grow the slot table past its initial size
+    private static final int PATH_COUNT = 17;
+
+    @Test
+    public void removeAfterRehash() {
+        PathTable table = new PathTable();
+        int[] ids = addPaths(table);
+
+        File last = new File("photos", "p" + (PATH_COUNT - 1) + ".jpg");
+        table.remove(ids[PATH_COUNT - 1]);
+
+        assertEquals(PATH_COUNT - 1, table.size());
+        assertEquals(-1, table.find(last));
+
+        // removing again must not touch the size
+        table.remove(ids[PATH_COUNT - 1]);
+        assertEquals(PATH_COUNT - 1, table.size());
+    }
+
+    @Test
+    public void reAddAfterRehash() {
+        PathTable table = new PathTable();
+        int[] ids = addPaths(table);
+
+        File last = new File("photos", "p" + (PATH_COUNT - 1) + ".jpg");
+        table.remove(ids[PATH_COUNT - 1]);
+
+        int id = table.add(last);
+        assertEquals(PATH_COUNT, table.size());
+        assertEquals(id, table.find(last));
+        assertEquals(last, table.getFile(id));
+
+        for (int i = 0; i < PATH_COUNT - 1; i++) {
+            assertEquals(ids[i], table.find(new File("photos", "p" + i + ".jpg")));
+        }
+    }
+
+    @Test
+    public void playlistRemoveAndReAddAfterRehash() {
+        Playlist playlist = new Playlist();
+        for (int i = 0; i < PATH_COUNT; i++) {
+            assertTrue(playlist.add(new File("photos", "p" + i + ".jpg")));
+        }
+
+        File last = new File("photos", "p" + (PATH_COUNT - 1) + ".jpg");
+        assertTrue(playlist.remove(last));
+        assertFalse(playlist.contains(last));
+        assertFalse(playlist.remove(last));
+        assertEquals(PATH_COUNT - 1, playlist.size());
+
+        assertTrue(playlist.add(last));
+        assertTrue(playlist.contains(last));
+        assertEquals(PATH_COUNT, playlist.size());
+    }
+
+    @Test
+    public void getIdsByDirectory() {
+        PathTable table = new PathTable();
+        addPaths(table);
+        table.add(new File(new File("photos", "child"), "c.jpg"));
+        table.add(new File("other", "o.jpg"));
+
+        assertEquals(PATH_COUNT, table.getIds(new File("photos"), false).length);
+        assertEquals(PATH_COUNT + 1, table.getIds(new File("photos"), true).length);
+        assertEquals(1, table.getIds(new File("other"), true).length);
+    }
+
+    private static int[] addPaths(PathTable table) {
+        int[] ids = new int[PATH_COUNT];
+        for (int i = 0; i < PATH_COUNT; i++) {
+            ids[i] = table.add(new File("photos", "p" + i + ".jpg"));
+        }
+
+        assertEquals(PATH_COUNT, table.size());
+        return ids;
+    }
+
+}
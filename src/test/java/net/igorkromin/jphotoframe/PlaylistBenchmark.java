@@ -0,0 +1,117 @@
+/**
+ * JPhotoFrame - a simple Java application for displaying a collection of photos in a full-screen slideshow.
+ * Copyright (C) 2015  Igor Kromin
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * You can find this and my other open source projects here - http://github.com/ikromin
+ */
+
+package net.igorkromin.jphotoframe;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Measures the heap taken by a Playlist of 100k and 1M paths and compares it to a Vector of File objects, which is
+ * how image files used to be held. It is kept with the tests so it is not shipped, and is not run by the test build.
+ * Run it after building with a fixed heap size so that the collector settles, for example:
+ *
+ *   java -Xmx1g -cp target/classes:target/test-classes net.igorkromin.jphotoframe.PlaylistBenchmark
+ */
+public class PlaylistBenchmark {
+
+    private static final int[] SIZES = {100000, 1000000};
+    private static final int FILES_PER_DIRECTORY = 500;
+    private static final String ROOT = "/home/photoframe/Pictures";
+
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            List<File> files = createFiles(size);
+
+            long vectorBytes = measureVector(files);
+            long playlistBytes = measurePlaylist(files);
+
+            System.out.println(String.format("%,d files: Vector<File> %,d bytes (%d/file), Playlist %,d bytes (%d/file)",
+                    size, vectorBytes, vectorBytes / size, playlistBytes, playlistBytes / size));
+        }
+    }
+
+    /**
+     * Creates paths laid out like a typical photo library, a few hundred files per album directory.
+     * @param size
+     * @return
+     */
+    private static List<File> createFiles(int size) {
+        List<File> files = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            int dir = i / FILES_PER_DIRECTORY;
+            String path = ROOT + "/" + (2000 + dir % 20) + "/Album " + dir + "/IMG_" + (10000 + i) + ".JPG";
+            files.add(new File(path));
+        }
+
+        return files;
+    }
+
+    private static long measureVector(List<File> files) {
+        long before = usedMemory();
+
+        // copy the paths so that the vector does not share strings with the source list
+        Vector<File> vector = new Vector<>();
+        for (File f : files) {
+            vector.add(new File(new String(f.getPath().toCharArray())));
+        }
+
+        long bytes = usedMemory() - before;
+        if (vector.size() != files.size()) {
+            throw new RuntimeException("Vector size mismatch");
+        }
+
+        return bytes;
+    }
+
+    private static long measurePlaylist(List<File> files) {
+        long before = usedMemory();
+
+        Playlist playlist = new Playlist();
+        playlist.update(files, new ArrayList<File>());
+
+        long bytes = usedMemory() - before;
+        if (playlist.size() != files.size() || playlist.next() == null) {
+            throw new RuntimeException("Playlist size mismatch");
+        }
+
+        return bytes;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}